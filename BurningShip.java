@@ -0,0 +1,20 @@
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+
+// Burning Ship, z' = (|re z| + i|im z|)^2 + c from z = 0
+public class BurningShip implements FractalKernelProvider {
+
+    @Override
+    public String name() {
+        return "burning-ship";
+    }
+
+    @Override
+    public FractalKernel create(int maxIter) {
+        return new FoldKernel(FoldKernel.Fold.BURNING_SHIP, maxIter);
+    }
+
+    public static void main(String[] args) {
+        new FractalExplorer(new BurningShip());
+    }
+}
@@ -1,4 +1,6 @@
 public class Complex {
+    public static final Complex ONE = new Complex(1, 0);
+
     private double real;
     private double imag;
 
@@ -15,11 +17,12 @@ public class Complex {
         return new Complex(this.real - other.real, this.imag - other.imag);
     }
 
-    // public Complex multiply(Complex other) {
-    //     double realPart = this.real * other.real - this.imag * other.imag;
-    //     double imagPart = this.real * other.imag + this.imag * other.real;
-    //     return new Complex(realPart, imagPart);
-    // }
+    public Complex multiply(Complex other) {
+        double realPart = this.real * other.real - this.imag * other.imag;
+        double imagPart = this.real * other.imag + this.imag * other.real;
+        return new Complex(realPart, imagPart);
+    }
+
     public Complex multiply(double scalar) {
         return new Complex(this.real * scalar, this.imag * scalar);
     }
@@ -31,6 +34,14 @@ public class Complex {
         return new Complex(realPart, imagPart);
     }
 
+    public double getReal() {
+        return real;
+    }
+
+    public double getImag() {
+        return imag;
+    }
+
     public double abs() {
         return Math.sqrt(real * real + imag * imag);
     }
@@ -0,0 +1,93 @@
+import fractal.spi.FractalKernel;
+import fractal.spi.Precision;
+
+/*
+ * Variations of the Mandelbrot set that fold z before squaring it,
+ * z' = fold(z)^2 + c from z = 0:
+ *   BURNING_SHIP  (|re z| + i|im z|)^2 + c
+ *   TRICORN       conj(z)^2 + c, also known as the Mandelbar set
+ * Either fold only changes the sign of the cross term 2 re z im z, so the
+ * loop is the Mandelbrot one with a different last step.
+ */
+public class FoldKernel implements FractalKernel {
+
+    public enum Fold {
+        BURNING_SHIP("burning-ship"),
+        TRICORN("tricorn");
+
+        final String name;
+
+        Fold(String name) {
+            this.name = name;
+        }
+    }
+
+    final Fold fold;
+    final int maxIter;
+
+    // Burning Ship takes the absolute value of the cross term, Tricorn negates it
+    private final boolean absolute;
+
+    public FoldKernel(Fold fold, int maxIter) {
+        this.fold = fold;
+        this.maxIter = maxIter;
+        this.absolute = fold == Fold.BURNING_SHIP;
+    }
+
+    @Override
+    public FoldKernel withMaxIter(int maxIter) {
+        return new FoldKernel(fold, maxIter);
+    }
+
+    @Override
+    public int iterate(double c_r, double c_i) {
+        double z_r = 0;
+        double z_i = 0;
+        int iterCount = 0;
+
+        while (z_r * z_r + z_i * z_i <= 4.0) {
+            double cross = 2 * z_r * z_i;
+
+            z_r = z_r * z_r - z_i * z_i + c_r;
+            z_i = (absolute ? Math.abs(cross) : -cross) + c_i;
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+        }
+
+        return iterCount;
+    }
+
+    @Override
+    public boolean supports(Precision precision) {
+        return precision == Precision.FLOAT || precision == Precision.DOUBLE;
+    }
+
+    @Override
+    public int iterate(float c_r, float c_i) {
+        float z_r = 0;
+        float z_i = 0;
+        int iterCount = 0;
+
+        while (z_r * z_r + z_i * z_i <= 4.0f) {
+            float cross = 2 * z_r * z_i;
+
+            z_r = z_r * z_r - z_i * z_i + c_r;
+            z_i = (absolute ? Math.abs(cross) : -cross) + c_i;
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+        }
+
+        return iterCount;
+    }
+
+    @Override
+    public String cacheKey() {
+        return fold.name + "," + maxIter;
+    }
+}
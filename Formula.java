@@ -0,0 +1,33 @@
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+
+// Escape-time fractals from a formula in z and c, see FormulaKernel
+public class Formula implements FractalKernelProvider {
+
+    static final String DEFAULT_FORMULA = "z^3 - z + c";
+
+    final String formula;
+
+    public Formula() {
+        this(DEFAULT_FORMULA);
+    }
+
+    public Formula(String formula) {
+        this.formula = formula;
+    }
+
+    @Override
+    public String name() {
+        return "formula";
+    }
+
+    @Override
+    public FractalKernel create(int maxIter) {
+        return FormulaKernel.create(formula, maxIter);
+    }
+
+    public static void main(String[] args) {
+        // Optional first argument is the formula, e.g. "(|re z| + i|im z|)^2 + c"
+        new FractalExplorer(new Formula(args.length > 0 ? args[0] : DEFAULT_FORMULA));
+    }
+}
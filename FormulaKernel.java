@@ -0,0 +1,904 @@
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fractal.spi.FractalKernel;
+import fractal.spi.Precision;
+
+/*
+ * Escape-time fractals from a formula typed in at run time, z' = f(z, c) from
+ * z = 0, for example
+ *
+ *   (|re z| + i|im z|)^2 + c      Burning Ship
+ *   conj(z)^2 + c                 Tricorn
+ *   z^3 - z + c
+ *
+ * The formula is not interpreted per point. It is expanded once into double
+ * arithmetic on the real and imaginary parts, and the bytecode javac would
+ * write for an ordinary iterate() loop with that body is emitted into a
+ * class of its own (see Assembler), so the JIT sees the same straight-line
+ * code as in a hand-written kernel (compare FoldKernel with
+ * frame.formula[burning-ship] in jmh/BenchmarkCases).
+ *
+ * Formulas are made of
+ *   z, c, i and real numbers, also as 1e-3
+ *   + - * / and ^ with a constant exponent: integer powers are multiplied
+ *     out, any other goes through polar form
+ *   |w| for the modulus, or the absolute value of a real
+ *   re, im, conj, abs, exp, sin, cos, sinh, cosh, applied to the next factor
+ *   as in re z, or to a parenthesised argument
+ * and a product can be written without *, as in 2z or i|im z|.
+ *
+ * The class is emitted directly, without javax.tools, so this works on a
+ * bare JRE as well.
+ */
+public abstract class FormulaKernel implements FractalKernel {
+
+    // |z|^2 above this counts as escaped, as in the other kernels
+    static final double BAILOUT = 4.0;
+
+    // Formulas whose classes are kept by COMPILED
+    static final int MAX_COMPILED = 64;
+
+    // Constructor handle of each formula's class, so that other limits and
+    // repeated renders don't compile it again. Only the most recently used
+    // are kept; the class of one dropped here is unloaded once no kernel
+    // of it is left.
+    private static final Map<String, MethodHandle> COMPILED = new LinkedHashMap<String, MethodHandle>(16, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MethodHandle> eldest) {
+            return size() > MAX_COMPILED;
+        }
+    };
+
+    final String formula;
+    final int maxIter;
+
+    protected FormulaKernel(String formula, int maxIter) {
+        this.formula = formula;
+        this.maxIter = maxIter;
+    }
+
+    public static FormulaKernel create(String formula, int maxIter) {
+        try {
+            return (FormulaKernel) compiled(formula).invoke(formula, maxIter);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean supports(Precision precision) {
+        return precision == Precision.DOUBLE;
+    }
+
+    @Override
+    public FractalKernel withMaxIter(int maxIter) {
+        return create(formula, maxIter);
+    }
+
+    @Override
+    public String cacheKey() {
+        return "formula," + maxIter + "," + formula;
+    }
+
+    // Throws IllegalArgumentException if the formula can't be parsed
+    private static synchronized MethodHandle compiled(String formula) throws ReflectiveOperationException {
+        MethodHandle constructor = COMPILED.get(formula);
+        if (constructor == null) {
+            Parser parser = new Parser(formula);
+            Parser.Value next = parser.parse();
+            byte[] bytes = new Assembler("CompiledFormula").classFile(parser.body, next.re,
+                    next.im != null ? next.im : "0.0");
+            // A hidden class in this class's package, so that it can use the
+            // package-private fields and several formulas can share the name
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            constructor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, String.class, int.class));
+            COMPILED.put(formula, constructor);
+        }
+        return constructor;
+    }
+
+    /*
+     * Recursive descent over the formula, writing the steps of one iteration
+     * into body as it goes. Every complex value is a pair of operands for its
+     * real and imaginary part; the imaginary part is null for values known
+     * to be real, which keeps re, im and |w| from costing more than in a
+     * hand-written kernel.
+     *
+     * An operand is z_r, z_i, c_r, c_i, a step's result t0, t1, ... or a
+     * literal, any of them negated as in -t3, negative literals in
+     * parentheses as in (-1.5).
+     *
+     *   sum     = product {("+" | "-") product}
+     *   product = unary {("*" | "/" | nothing) unary}
+     *   unary   = ("-" | "+") unary | power
+     *   power   = factor ["^" unary]
+     *   factor  = number | "z" | "c" | "i" | function factor
+     *           | "(" sum ")" | "|" sum "|"
+     */
+    private static class Parser {
+
+        /*
+         * One statement of the loop body: + - * / on two operands, or the
+         * method of java.lang.Math named op on one or two (see
+         * Assembler.MATH).
+         */
+        static class Step {
+            final String op;
+            final String[] operands;
+
+            Step(String op, String[] operands) {
+                this.op = op;
+                this.operands = operands;
+            }
+        }
+
+        static class Value {
+            final String re;
+            final String im;
+            // Value of a real constant, for folding and exponents, else NaN
+            final double constant;
+
+            Value(String re, String im) {
+                this(re, im, Double.NaN);
+            }
+
+            Value(String re, String im, double constant) {
+                this.re = re;
+                this.im = im;
+                this.constant = constant;
+            }
+
+            boolean isConstant() {
+                return !Double.isNaN(constant);
+            }
+        }
+
+        private final String text;
+        private int pos;
+        // How many |...| the parser is inside, where a | closes rather than opens
+        private int absDepth;
+        final List<Step> body = new ArrayList<>();
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Value parse() {
+            Value value = sum();
+            skipSpaces();
+            if (pos < text.length()) {
+                throw error("Unexpected '" + text.charAt(pos) + "'");
+            }
+            return value;
+        }
+
+        private Value sum() {
+            Value value = product();
+            while (true) {
+                if (accept('+')) {
+                    value = add(value, product(), "+");
+                } else if (accept('-')) {
+                    value = add(value, product(), "-");
+                } else {
+                    return value;
+                }
+            }
+        }
+
+        private Value product() {
+            Value value = unary();
+            while (true) {
+                if (accept('*')) {
+                    value = multiply(value, unary());
+                } else if (accept('/')) {
+                    value = divide(value, unary());
+                } else if (startsFactor()) {
+                    value = multiply(value, unary());
+                } else {
+                    return value;
+                }
+            }
+        }
+
+        private Value unary() {
+            if (accept('-')) {
+                return negate(unary());
+            }
+            if (accept('+')) {
+                return unary();
+            }
+            return power();
+        }
+
+        private Value power() {
+            Value base = factor();
+            if (!accept('^')) {
+                return base;
+            }
+            int at = pos;
+            Value exponent = unary();
+            if (!exponent.isConstant()) {
+                pos = at;
+                throw error("Exponent must be a real constant");
+            }
+            return power(base, exponent.constant);
+        }
+
+        private Value factor() {
+            skipSpaces();
+            if (pos >= text.length()) {
+                throw error("Formula ends too early");
+            }
+            char ch = text.charAt(pos);
+            if (Character.isDigit(ch) || ch == '.') {
+                return number();
+            }
+            if (accept('(')) {
+                Value value = sum();
+                expect(')');
+                return value;
+            }
+            if (accept('|')) {
+                absDepth++;
+                Value value = sum();
+                expect('|');
+                absDepth--;
+                return abs(value);
+            }
+            if (Character.isLetter(ch)) {
+                int start = pos;
+                while (pos < text.length() && Character.isLetter(text.charAt(pos))) {
+                    pos++;
+                }
+                String name = text.substring(start, pos);
+                switch (name) {
+                    case "z":
+                        return new Value("z_r", "z_i");
+                    case "c":
+                        return new Value("c_r", "c_i");
+                    case "i":
+                        return new Value("0.0", "1.0");
+                    case "re":
+                        return new Value(factor().re, null);
+                    case "im":
+                        Value value = factor();
+                        return value.im != null ? new Value(value.im, null) : constant(0);
+                    case "conj":
+                        return conjugate(factor());
+                    case "abs":
+                        return abs(factor());
+                    case "exp":
+                        return exp(factor());
+                    case "sin":
+                        return sin(factor(), false);
+                    case "cos":
+                        return cos(factor(), false);
+                    case "sinh":
+                        return sin(factor(), true);
+                    case "cosh":
+                        return cos(factor(), true);
+                    default:
+                        pos = start;
+                        throw error("Unknown name " + name);
+                }
+            }
+            throw error("Unexpected '" + ch + "'");
+        }
+
+        // Digits with an optional exponent, as in 1e-3; an e not followed by
+        // one is left alone, so that 2exp(z) is still 2 * exp(z)
+        private Value number() {
+            int start = pos;
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                pos++;
+            }
+            if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                int digits = pos + 1;
+                if (digits < text.length() && (text.charAt(digits) == '+' || text.charAt(digits) == '-')) {
+                    digits++;
+                }
+                if (digits < text.length() && Character.isDigit(text.charAt(digits))) {
+                    pos = digits;
+                    while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                        pos++;
+                    }
+                }
+            }
+            double value;
+            try {
+                value = Double.parseDouble(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("Bad number");
+            }
+            if (Double.isInfinite(value)) {
+                pos = start;
+                throw error("Number too large");
+            }
+            return constant(value);
+        }
+
+        // Whether the next character starts a factor multiplied without *
+        private boolean startsFactor() {
+            skipSpaces();
+            if (pos >= text.length()) {
+                return false;
+            }
+            char ch = text.charAt(pos);
+            return Character.isLetterOrDigit(ch) || ch == '.' || ch == '(' || (ch == '|' && absDepth == 0);
+        }
+
+        // Arithmetic, on the real and imaginary parts
+
+        private Value add(Value a, Value b, String op) {
+            if (a.isConstant() && b.isConstant()) {
+                return constant(op.equals("+") ? a.constant + b.constant : a.constant - b.constant);
+            }
+            String im = a.im == null && b.im == null ? null
+                    : op.equals("+") ? plus(imaginary(a), imaginary(b)) : minus(imaginary(a), imaginary(b));
+            return new Value(op.equals("+") ? plus(a.re, b.re) : minus(a.re, b.re), im);
+        }
+
+        private Value negate(Value a) {
+            if (a.isConstant()) {
+                return constant(-a.constant);
+            }
+            return new Value(negated(a.re), a.im != null ? negated(a.im) : null);
+        }
+
+        private Value multiply(Value a, Value b) {
+            if (a.isConstant() && b.isConstant()) {
+                return constant(a.constant * b.constant);
+            }
+            if (a.im == null && b.im == null) {
+                return new Value(times(a.re, b.re), null);
+            }
+            return new Value(minus(times(a.re, b.re), times(imaginary(a), imaginary(b))),
+                    plus(times(a.re, imaginary(b)), times(imaginary(a), b.re)));
+        }
+
+        private Value square(Value a) {
+            if (a.im == null) {
+                return new Value(times(a.re, a.re), null);
+            }
+            return new Value(minus(times(a.re, a.re), times(a.im, a.im)), times(times("2.0", a.re), a.im));
+        }
+
+        private Value divide(Value a, Value b) {
+            if (a.isConstant() && b.isConstant()) {
+                return constant(a.constant / b.constant);
+            }
+            if (b.im == null) {
+                return multiply(a, new Value(temp("/", "1.0", b.re), null));
+            }
+            String inverse = temp("/", "1.0", plus(times(b.re, b.re), times(b.im, b.im)));
+            return multiply(a, new Value(times(b.re, inverse), times(negated(b.im), inverse)));
+        }
+
+        /*
+         * The same on single parts. Parts that are literally 0 or 1, as in i,
+         * are folded here, since the JIT can't drop 0.0 * x when x might be
+         * infinite or NaN; escaped orbits never get that far anyway.
+         */
+        private String plus(String x, String y) {
+            if (isZero(x)) {
+                return y;
+            }
+            return isZero(y) ? x : temp("+", x, y);
+        }
+
+        private String minus(String x, String y) {
+            if (isZero(y)) {
+                return x;
+            }
+            return isZero(x) ? negated(y) : temp("-", x, y);
+        }
+
+        private String times(String x, String y) {
+            if (isZero(x) || isZero(y)) {
+                return "0.0";
+            }
+            if (x.equals("1.0")) {
+                return y;
+            }
+            return y.equals("1.0") ? x : temp("*", x, y);
+        }
+
+        private static boolean isZero(String part) {
+            return part.equals("0.0") || part.equals("-0.0");
+        }
+
+        private static String imaginary(Value a) {
+            return a.im != null ? a.im : "0.0";
+        }
+
+        private Value power(Value base, double exponent) {
+            if (base.isConstant()) {
+                return constant(Math.pow(base.constant, exponent));
+            }
+            if (exponent == Math.rint(exponent) && Math.abs(exponent) <= 64) {
+                // Square-and-multiply, as MultibrotKernel does at run time
+                int n = (int) Math.abs(exponent);
+                Value result = null;
+                Value square = base;
+                while (n > 0) {
+                    if ((n & 1) != 0) {
+                        result = result == null ? square : multiply(result, square);
+                    }
+                    n >>= 1;
+                    if (n > 0) {
+                        square = square(square);
+                    }
+                }
+                if (result == null) {
+                    return constant(1);
+                }
+                return exponent < 0 ? divide(constant(1), result) : result;
+            }
+            // w^p = |w|^p (cos p arg w + i sin p arg w)
+            String im = base.im != null ? base.im : "0.0";
+            String modulus = temp("pow", plus(times(base.re, base.re), times(im, im)), constant(exponent / 2).re);
+            String angle = times(constant(exponent).re, temp("atan2", im, base.re));
+            return new Value(times(modulus, temp("cos", angle)), times(modulus, temp("sin", angle)));
+        }
+
+        private Value abs(Value a) {
+            if (a.isConstant()) {
+                return constant(Math.abs(a.constant));
+            }
+            if (a.im == null) {
+                return new Value(temp("abs", a.re), null);
+            }
+            return new Value(temp("sqrt", plus(times(a.re, a.re), times(a.im, a.im))), null);
+        }
+
+        private Value conjugate(Value a) {
+            return a.im == null ? a : new Value(a.re, negated(a.im));
+        }
+
+        private Value exp(Value a) {
+            String scale = temp("exp", a.re);
+            if (a.im == null) {
+                return new Value(scale, null);
+            }
+            return new Value(times(scale, temp("cos", a.im)), times(scale, temp("sin", a.im)));
+        }
+
+        // sin(x + iy) = sin x cosh y + i cos x sinh y, and sinh with the roles swapped
+        private Value sin(Value a, boolean hyperbolic) {
+            String f = hyperbolic ? "sinh" : "sin";
+            if (a.im == null) {
+                return new Value(temp(f, a.re), null);
+            }
+            return hyperbolic
+                    ? new Value(times(temp("sinh", a.re), temp("cos", a.im)),
+                            times(temp("cosh", a.re), temp("sin", a.im)))
+                    : new Value(times(temp("sin", a.re), temp("cosh", a.im)),
+                            times(temp("cos", a.re), temp("sinh", a.im)));
+        }
+
+        // cos(x + iy) = cos x cosh y - i sin x sinh y, cosh(x + iy) = cosh x cos y + i sinh x sin y
+        private Value cos(Value a, boolean hyperbolic) {
+            String f = hyperbolic ? "cosh" : "cos";
+            if (a.im == null) {
+                return new Value(temp(f, a.re), null);
+            }
+            return hyperbolic
+                    ? new Value(times(temp("cosh", a.re), temp("cos", a.im)),
+                            times(temp("sinh", a.re), temp("sin", a.im)))
+                    : new Value(times(temp("cos", a.re), temp("cosh", a.im)),
+                            negated(times(temp("sin", a.re), temp("sinh", a.im))));
+        }
+
+        // -operand, for the single names and literals that values are made of
+        private static String negated(String operand) {
+            return operand.startsWith("-") ? operand.substring(1) : "-" + operand;
+        }
+
+        /*
+         * A real constant, also what constant parts fold to. One that comes
+         * out infinite or NaN, as when dividing by a constant 0, is a mistake
+         * in the formula, and NaN would read as no constant at all, so those
+         * are rejected here.
+         */
+        private Value constant(double value) {
+            if (!Double.isFinite(value)) {
+                throw error("Constant part comes out as " + value);
+            }
+            String literal = Double.toString(value);
+            return new Value(value < 0 ? "(" + literal + ")" : literal, null, value);
+        }
+
+        // A step computing op of the operands, so that parts used twice are
+        // computed once; returns the operand for its result
+        private String temp(String op, String... operands) {
+            body.add(new Step(op, operands));
+            return "t" + (body.size() - 1);
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean accept(char ch) {
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == ch) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char ch) {
+            if (!accept(ch)) {
+                throw error("Expected '" + ch + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (pos + 1) + " of formula " + text);
+        }
+    }
+
+    /*
+     * Writes the class file of a formula's kernel: a final subclass of
+     * FormulaKernel with the constructor and iterate(double, double), the
+     * same loop as in the hand-written kernels,
+     *
+     *   z_r = 0; z_i = 0; iterCount = 0;
+     *   while (z_r * z_r + z_i * z_i <= BAILOUT) {
+     *       t0 = ...; t1 = ...; ...           the parser's steps
+     *       z_r = re; z_i = im;
+     *       if (iterCount >= maxIter) return maxIter;
+     *       iterCount++;
+     *   }
+     *   return iterCount;
+     *
+     * in the bytecode javac makes of it. Locals are c_r at 1, c_i at 3, z_r
+     * at 5, z_i at 7, the count at 9 and the steps from 10, two slots each.
+     */
+    private static class Assembler {
+
+        // The methods of java.lang.Math a step may call, by their number of arguments
+        static final Map<String, Integer> MATH = Map.of("abs", 1, "sqrt", 1, "exp", 1, "sin", 1, "cos", 1,
+                "sinh", 1, "cosh", 1, "pow", 2, "atan2", 2);
+
+        private static final int C_R = 1, C_I = 3, Z_R = 5, Z_I = 7, COUNT = 9, STEPS = 10;
+
+        private static final String SUPER = "FormulaKernel";
+        private static final String CONSTRUCTOR = "(Ljava/lang/String;I)V";
+
+        // Java 17, the first version with hidden classes is 15
+        private static final int MAJOR_VERSION = 61;
+
+        private final String className;
+        private final Bytes pool = new Bytes();
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int poolCount = 1;
+
+        Assembler(String className) {
+            this.className = className;
+        }
+
+        byte[] classFile(List<Parser.Step> steps, String re, String im) {
+            int thisClass = classEntry(className);
+            int superClass = classEntry(SUPER);
+            byte[] constructor = method("<init>", CONSTRUCTOR, constructorCode());
+            byte[] iterate = method("iterate", "(DD)I", iterateCode(steps, re, im, thisClass));
+
+            Bytes file = new Bytes();
+            file.u4(0xCAFEBABE);
+            file.u2(0);
+            file.u2(MAJOR_VERSION);
+            file.u2(poolCount);
+            file.bytes(pool.toByteArray());
+            file.u2(0x0001 | 0x0010 | 0x0020); // public final super
+            file.u2(thisClass);
+            file.u2(superClass);
+            file.u2(0); // interfaces
+            file.u2(0); // fields
+            file.u2(2);
+            file.bytes(constructor);
+            file.bytes(iterate);
+            file.u2(0); // attributes
+            return file.toByteArray();
+        }
+
+        // super(formula, maxIter)
+        private byte[] constructorCode() {
+            Bytes code = new Bytes();
+            code.u1(0x2A); // aload_0
+            code.u1(0x2B); // aload_1
+            code.u1(0x1C); // iload_2
+            code.u1(0xB7); // invokespecial
+            code.u2(memberEntry(10, SUPER, "<init>", CONSTRUCTOR));
+            code.u1(0xB1); // return
+            return codeAttribute(3, 3, code.toByteArray(), null);
+        }
+
+        private byte[] iterateCode(List<Parser.Step> steps, String re, String im, int thisClass) {
+            int maxIter = memberEntry(9, SUPER, "maxIter", "I");
+            Bytes code = new Bytes();
+            code.u1(0x0E); // dconst_0
+            local(code, 0x39, Z_R); // dstore
+            code.u1(0x0E);
+            local(code, 0x39, Z_I);
+            code.u1(0x03); // iconst_0
+            local(code, 0x36, COUNT); // istore
+
+            int loop = code.size();
+            local(code, 0x18, Z_R); // dload
+            local(code, 0x18, Z_R);
+            code.u1(0x6B); // dmul
+            local(code, 0x18, Z_I);
+            local(code, 0x18, Z_I);
+            code.u1(0x6B);
+            code.u1(0x63); // dadd
+            code.u1(0x14); // ldc2_w
+            code.u2(doubleEntry(BAILOUT));
+            code.u1(0x98); // dcmpg, so that NaN leaves the loop
+            int exitJump = code.size();
+            code.u1(0x9D); // ifgt
+            code.u2(0);
+
+            for (int i = 0; i < steps.size(); i++) {
+                Parser.Step step = steps.get(i);
+                for (String operand : step.operands) {
+                    load(code, operand);
+                }
+                switch (step.op) {
+                    case "+":
+                        code.u1(0x63); // dadd
+                        break;
+                    case "-":
+                        code.u1(0x67); // dsub
+                        break;
+                    case "*":
+                        code.u1(0x6B); // dmul
+                        break;
+                    case "/":
+                        code.u1(0x6F); // ddiv
+                        break;
+                    default:
+                        code.u1(0xB8); // invokestatic
+                        code.u2(memberEntry(10, "java/lang/Math", step.op,
+                                MATH.get(step.op) == 1 ? "(D)D" : "(DD)D"));
+                }
+                local(code, 0x39, STEPS + 2 * i);
+            }
+            // Both parts are worked out before z changes
+            load(code, re);
+            load(code, im);
+            local(code, 0x39, Z_I);
+            local(code, 0x39, Z_R);
+
+            local(code, 0x15, COUNT); // iload
+            code.u1(0x2A); // aload_0
+            code.u1(0xB4); // getfield
+            code.u2(maxIter);
+            int incrementJump = code.size();
+            code.u1(0xA1); // if_icmplt
+            code.u2(0);
+            code.u1(0x2A);
+            code.u1(0xB4);
+            code.u2(maxIter);
+            code.u1(0xAC); // ireturn
+
+            int increment = code.size();
+            code.u1(0x84); // iinc
+            code.u1(COUNT);
+            code.u1(1);
+            code.u1(0xA7); // goto
+            code.u2(loop - (code.size() - 1));
+
+            int exit = code.size();
+            local(code, 0x15, COUNT);
+            code.u1(0xAC);
+
+            // Branch offsets are 16 bits, relative to the branch
+            if (code.size() > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Formula too long");
+            }
+            code.patch(exitJump + 1, exit - exitJump);
+            code.patch(incrementJump + 1, increment - incrementJump);
+
+            // The three branch targets all see the locals as on entry to the loop
+            Bytes frames = new Bytes();
+            frames.u2(3);
+            int previous = -1;
+            for (int target : new int[] { loop, increment, exit }) {
+                frames.u1(255); // full_frame
+                frames.u2(target - previous - 1);
+                previous = target;
+                frames.u2(6);
+                frames.u1(7); // this
+                frames.u2(thisClass);
+                for (int i = 0; i < 4; i++) {
+                    frames.u1(3); // c_r, c_i, z_r, z_i
+                }
+                frames.u1(1); // count
+                frames.u2(0); // stack
+            }
+            return codeAttribute(6, STEPS + 2 * steps.size(), code.toByteArray(), frames.toByteArray());
+        }
+
+        // Pushes the value of an operand, see Parser
+        private void load(Bytes code, String operand) {
+            if (operand.startsWith("(")) {
+                load(code, operand.substring(1, operand.length() - 1));
+            } else if (operand.startsWith("-")) {
+                load(code, operand.substring(1));
+                code.u1(0x77); // dneg
+            } else if (operand.equals("c_r")) {
+                local(code, 0x18, C_R);
+            } else if (operand.equals("c_i")) {
+                local(code, 0x18, C_I);
+            } else if (operand.equals("z_r")) {
+                local(code, 0x18, Z_R);
+            } else if (operand.equals("z_i")) {
+                local(code, 0x18, Z_I);
+            } else if (operand.startsWith("t")) {
+                local(code, 0x18, STEPS + 2 * Integer.parseInt(operand.substring(1)));
+            } else {
+                code.u1(0x14); // ldc2_w
+                code.u2(doubleEntry(Double.parseDouble(operand)));
+            }
+        }
+
+        // A load or store of a local, widened past the first 256
+        private static void local(Bytes code, int opcode, int index) {
+            if (index > 0xFF) {
+                code.u1(0xC4); // wide
+                code.u1(opcode);
+                code.u2(index);
+            } else {
+                code.u1(opcode);
+                code.u1(index);
+            }
+        }
+
+        private byte[] method(String name, String descriptor, byte[] code) {
+            Bytes method = new Bytes();
+            method.u2(0x0001); // public
+            method.u2(utf8Entry(name));
+            method.u2(utf8Entry(descriptor));
+            method.u2(1);
+            method.bytes(code);
+            return method.toByteArray();
+        }
+
+        private byte[] codeAttribute(int maxStack, int maxLocals, byte[] code, byte[] stackMap) {
+            int name = utf8Entry("Code");
+            int stackMapName = stackMap != null ? utf8Entry("StackMapTable") : 0;
+            Bytes attribute = new Bytes();
+            attribute.u2(name);
+            attribute.u4(12 + code.length + (stackMap != null ? 6 + stackMap.length : 0));
+            attribute.u2(maxStack);
+            attribute.u2(maxLocals);
+            attribute.u4(code.length);
+            attribute.bytes(code);
+            attribute.u2(0); // exception table
+            if (stackMap != null) {
+                attribute.u2(1);
+                attribute.u2(stackMapName);
+                attribute.u4(stackMap.length);
+                attribute.bytes(stackMap);
+            } else {
+                attribute.u2(0);
+            }
+            return attribute.toByteArray();
+        }
+
+        // Constant pool entries, each added once; dependencies are added before the entry itself
+
+        private int utf8Entry(String text) {
+            Integer index = entries.get("utf8 " + text);
+            if (index == null) {
+                // Only ASCII names go in here, for which modified UTF-8 is plain ASCII
+                byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+                pool.u1(1);
+                pool.u2(bytes.length);
+                pool.bytes(bytes);
+                index = add("utf8 " + text, 1);
+            }
+            return index;
+        }
+
+        private int classEntry(String name) {
+            Integer index = entries.get("class " + name);
+            if (index == null) {
+                int nameIndex = utf8Entry(name);
+                pool.u1(7);
+                pool.u2(nameIndex);
+                index = add("class " + name, 1);
+            }
+            return index;
+        }
+
+        // A Fieldref (tag 9) or Methodref (tag 10)
+        private int memberEntry(int tag, String owner, String name, String descriptor) {
+            String key = tag + " " + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index == null) {
+                int ownerIndex = classEntry(owner);
+                int nameIndex = utf8Entry(name);
+                int descriptorIndex = utf8Entry(descriptor);
+                pool.u1(12); // NameAndType
+                pool.u2(nameIndex);
+                pool.u2(descriptorIndex);
+                int nameAndType = add(key + " name and type", 1);
+                pool.u1(tag);
+                pool.u2(ownerIndex);
+                pool.u2(nameAndType);
+                index = add(key, 1);
+            }
+            return index;
+        }
+
+        private int doubleEntry(double value) {
+            String key = "double " + Double.doubleToRawLongBits(value);
+            Integer index = entries.get(key);
+            if (index == null) {
+                pool.u1(6);
+                pool.u4((int) (Double.doubleToRawLongBits(value) >>> 32));
+                pool.u4((int) Double.doubleToRawLongBits(value));
+                // A double takes up two entries
+                index = add(key, 2);
+            }
+            return index;
+        }
+
+        private int add(String key, int size) {
+            int index = poolCount;
+            poolCount += size;
+            if (poolCount > 0xFFFF) {
+                throw new IllegalArgumentException("Formula too long");
+            }
+            entries.put(key, index);
+            return index;
+        }
+    }
+
+    // Big-endian output for the class file
+    private static class Bytes extends ByteArrayOutputStream {
+
+        void u1(int value) {
+            write(value);
+        }
+
+        void u2(int value) {
+            write(value >>> 8);
+            write(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        void bytes(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+        }
+
+        // Overwrites the two bytes at position with value
+        void patch(int position, int value) {
+            buf[position] = (byte) (value >>> 8);
+            buf[position + 1] = (byte) value;
+        }
+    }
+}
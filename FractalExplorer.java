@@ -1,14 +1,30 @@
-import java.awt.image.BufferedImage;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
 import java.awt.event.ActionEvent;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.*;
 
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+import fractal.spi.Palette;
+import fractal.spi.Precision;
 
 
 
+/*
+ * The explorer for every fractal, see FractalKernelProvider. N switches to
+ * the next one; the launchers Mandelbrot, JuliaSet, Multibrot and Newton
+ * just start it on theirs.
+ */
 public class FractalExplorer extends JFrame {
 
     static final int WIDTH = 600;
@@ -21,120 +37,208 @@ public class FractalExplorer extends JFrame {
     static final double DEFAULT_TOP_LEFT_Y = +3.0;
 
     double zoomFactor = DEFAULT_ZOOM;
-    double topLeftX = DEFAULT_TOP_LEFT_X;
-    double topLeftY = DEFAULT_TOP_LEFT_Y;
+
+    // Kept exact so the view can still be moved by a pixel far past the
+    // zoom where doubles stop resolving one; see Precision
+    BigDecimal topLeftX = new BigDecimal(DEFAULT_TOP_LEFT_X);
+    BigDecimal topLeftY = new BigDecimal(DEFAULT_TOP_LEFT_Y);
 
     Canvas canvas;
-    BufferedImage fractalImage;
+    CPicker picker;
+    FrameBuffer frameBuffer;
+    FractalKernelProvider provider;
+    FractalKernel kernel;
+    Palette palette;
+    FractalRenderer engine;
+    TileRenderer.RenderJob job;
+
+    // Shared by the engines of all kernels, so each render queues up behind
+    // the one before it, and Mariani-Silver and progressive mode carry over
+    final TileRenderer tiles = new TileRenderer();
+
+    // One cache for all kernels, their cache keys tell them apart
+    TileCache tileCache = new TileCache(TileCache.DEFAULT_MAX_BYTES);
+
+    // Constant of fractals that have one, picked on the Mandelbrot set at the
+    // side, see CPicker
+    double c_r = JuliaSet.DEFAULT_C_R;
+    double c_i = JuliaSet.DEFAULT_C_I;
+
+    // Palette cycling: every tick recolors the frame with the palette moved
+    // on by one entry, which needs no iterating at all
+    static final int CYCLE_INTERVAL_MS = 40;
+    Timer cycleTimer = new Timer(CYCLE_INTERVAL_MS, e -> cycle());
+    int cycleOffset = 0;
+    TileRenderer.RenderJob cycleJob;
+
+    /*
+     * While c is being dragged, every move renders a preview instead: a
+     * PREVIEW_SCALE times coarser frame at PREVIEW_ITER iterations, which
+     * costs a few milliseconds, scaled up onto the canvas. Previews render
+     * one at a time on their own thread, each for the latest c; moves that
+     * arrive while one is rendering replace each other, so a slow preview
+     * skips frames instead of falling further behind. Once the mouse has
+     * rested for SETTLE_MS or is released, the full frame is rendered.
+     */
+    static final int PREVIEW_SCALE = 2;
+    static final int PREVIEW_ITER = MAX_ITER / 2;
+    static final int SETTLE_MS = 150;
+
+    // Alternated, so the canvas isn't shown one being rendered into
+    final FrameBuffer[] previews = { new FrameBuffer(WIDTH / PREVIEW_SCALE, HEIGHT / PREVIEW_SCALE),
+            new FrameBuffer(WIDTH / PREVIEW_SCALE, HEIGHT / PREVIEW_SCALE) };
+    volatile FrameBuffer preview;
+    boolean previewing;
+
+    // Next c to preview, null once the preview thread has caught up, and
+    // the view to preview it in
+    final AtomicReference<double[]> previewC = new AtomicReference<>();
+    volatile Viewport previewView;
+    final ExecutorService previewThread = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "c-preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+    Timer settleTimer = new Timer(SETTLE_MS, e -> showC());
 
     public FractalExplorer() {
+        this(new Mandelbrot());
+    }
+
+    public FractalExplorer(FractalKernelProvider provider) {
+        settleTimer.setRepeats(false);
         setInitialGUIProperties();
         addCanvas();
-        updateFractal();
+        setProvider(provider);
         canvas.addKeyStrokeEvents();
         canvas.requestFocusInWindow();
 
     }
 
-    private double getXPos(double x) {
-        return x / zoomFactor + topLeftX;
+    public void updateFractal() {
+        Viewport view = new Viewport(topLeftX, topLeftY, zoomFactor);
+        String precision = engine.precisionFor(view).name().toLowerCase(Locale.ROOT).replace('_', '-');
+        String constant = provider.hasConstant() ? String.format(Locale.ROOT, " c = %.5f%+.5fi", c_r, c_i) : "";
+        setTitle("Fractal Explorer - " + provider.name() + constant + " - "
+                + (engine.usesPerturbation(view) ? "perturbation" : precision));
+        job = engine.submit(view, frameBuffer, canvas::repaint);
     }
 
-    private double getYPos(double y) {
-        return y / zoomFactor - topLeftY;
+    // Switches to another fractal at the same view, in its own colors
+    private void setProvider(FractalKernelProvider provider) {
+        settleTimer.stop();
+        previewing = false;
+        this.provider = provider;
+        palette = null;
+        setKernel(provider.hasConstant() ? provider.create(MAX_ITER, c_r, c_i) : provider.create(MAX_ITER));
+
+        picker.setVisible(provider.hasConstant());
+        setSize(provider.hasConstant() ? WIDTH + CPicker.SIZE : WIDTH, HEIGHT);
+        validate();
     }
 
-    public void updateFractal() {
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                double c_r = getXPos(x);
-                double c_i = getYPos(y);
-
-                int iterCount = computeIterations(c_r, c_i);
-
-                int pixelColor = makeColor(iterCount);
-                fractalImage.setRGB(x, y, pixelColor);
+    private void nextFractal() {
+        List<FractalKernelProvider> providers = Fractals.all();
+        int current = 0;
+        for (int i = 0; i < providers.size(); i++) {
+            if (providers.get(i).name().equals(provider.name())) {
+                current = i;
             }
         }
-        canvas.repaint();
+        setProvider(providers.get((current + 1) % providers.size()));
     }
 
-    // private int makeColor(int iterCount) {
-    //     int color = 0b011011100001100101101000;
-    //     int mask = 0b000000000000010101110111;
-    //     int shiftMag = iterCount / 13;
-
-    //     if (iterCount == MAX_ITER)
-    //         return Color.BLACK.getRGB();
-    //     return color | (mask << shiftMag);
-    // }
-    private int makeColor(int iterCount) {
-        if (iterCount == MAX_ITER) {
-            return Color.BLACK.getRGB(); // Points inside the set are black
+    /*
+     * Renders another kernel. A renderer's kernel is fixed, so it gets a new
+     * one on the same TileRenderer; submitting on it cancels the old one's
+     * job and starts only once that has stopped drawing into the frame.
+     */
+    private void setKernel(FractalKernel kernel) {
+        this.kernel = kernel;
+        if (palette == null) {
+            palette = provider.palette(kernel, null, MAX_ITER);
         }
+        engine = new FractalRenderer(kernel, palette.shifted(cycleOffset), tiles);
+        // Zooming back out then costs nothing, see TileCache
+        engine.setTileCache(tileCache);
+        engine.setProgressive(true);
+        engine.setSupersampling(4);
+        engine.setAdaptiveIterations(kernel.withMaxIter(MAX_ITER) != null);
+        updateFractal();
+    }
 
-        // Use sine functions to generate smooth color gradients
-        double hue = 0.7 + 0.3 * Math.cos(iterCount * 0.1);
-        double saturation = 0.5 + 0.5 * Math.cos(iterCount * 0.2);
-        double brightness = 0.5 + 0.5 * Math.sin(iterCount * 0.3);
+    // Cancels the full render without waiting for it: at BigDecimal precision
+    // the row it stops after can take a while, and the next render waits anyway
+    private void stopRender() {
+        if (job != null) {
+            job.cancel();
+        }
+    }
 
-        // Convert HSV to RGB
-        Color color = Color.getHSBColor((float) hue, (float) saturation, (float) brightness);
+    // Moves c while dragging: a preview now, the full frame once the mouse rests
+    private void dragC(double c_r, double c_i) {
+        this.c_r = c_r;
+        this.c_i = c_i;
+        if (!previewing) {
+            // Leave the cores to the previews
+            stopRender();
+            previewing = true;
+        }
+        previewView = new Viewport(topLeftX, topLeftY, zoomFactor / PREVIEW_SCALE);
+        if (previewC.getAndSet(new double[] { c_r, c_i }) == null) {
+            previewThread.execute(this::renderPreviews);
+        }
+        settleTimer.restart();
+        picker.repaint();
+    }
 
-        return color.getRGB();
+    // The full frame for the c dragged to
+    private void showC() {
+        settleTimer.stop();
+        previewing = false;
+        setKernel(provider.create(MAX_ITER, c_r, c_i));
     }
 
-    private int computeIterations(double c_r, double c_i) {
-        /*
-         * let c = c_r + c_i
-         * let z = z_r + z_i
-         * 
-         * z' = z*z + c
-         * = (z_r + z_i)(z_r + z_i) + c_r + c_i
-         * = z_r^2 + 2*z_r*z_i - z_i^2 + c_r + c_i
-         * 
-         * z_r' = z_r^2 - z_i^2 + c_r
-         * z_i' = 2*z_i*z_r + c_i
-         * 
-         * 
-         * 
-         */
-
-        double z_r = 0.0;
-        double z_i = 0.0;
-
-        int iterCount = 0;
-
-        // sq(a^2 + b^2) <= 2
-        // a^2 + b^2 <= 4 since sq is compute heavy
-
-        while (z_r * z_i + z_r * z_i <= 4.0) {
-            double z_r_tmp = z_r;
-
-            z_r = z_r * z_r - z_i * z_i + c_r;
-            z_i = 2 * z_r_tmp * z_i + c_i;
-
-            // point was inside MandleBort set
-            if (iterCount >= MAX_ITER) {
-                return MAX_ITER;
-            }
-            iterCount++;
+    // Preview thread: renders the latest c until no newer one is waiting
+    private void renderPreviews() {
+        double[] c;
+        while ((c = previewC.get()) != null) {
+            FrameBuffer target = preview == previews[0] ? previews[1] : previews[0];
+            FractalRenderer engine = new FractalRenderer(provider.create(PREVIEW_ITER, c[0], c[1]),
+                    palette.withMaxIter(PREVIEW_ITER));
+            engine.setMarianiSilver(true);
+            engine.render(previewView, target);
+            preview = target;
+            SwingUtilities.invokeLater(canvas::repaint);
+            previewC.compareAndSet(c, null);
         }
+    }
 
-        // Complex point was outside MandleBort set
-        return iterCount;
-
+    // Moves the origin by a distance in the complex plane, keeping only the
+    // digits that matter at the current zoom
+    private BigDecimal offset(BigDecimal origin, double distance) {
+        MathContext mc = Precision.mathContext(1.0 / zoomFactor);
+        return origin.add(new BigDecimal(distance), mc);
     }
 
+    // private int makeColor(int iterCount) {
+    //     int color = 0b011011100001100101101000;
+    //     int mask = 0b000000000000010101110111;
+    //     int shiftMag = iterCount / 13;
+
+    //     if (iterCount == MAX_ITER)
+    //         return Color.BLACK.getRGB();
+    //     return color | (mask << shiftMag);
+    // }
     private void moveUp() {
         double curHeight = HEIGHT / zoomFactor;
-        topLeftY += curHeight / 6;
+        topLeftY = offset(topLeftY, curHeight / 6);
         updateFractal();
     }
 
     private void moveDown() {
         double curHeight = HEIGHT / zoomFactor;
-        topLeftY -= curHeight / 6;
+        topLeftY = offset(topLeftY, -curHeight / 6);
         updateFractal();
     }
 
@@ -151,22 +255,61 @@ public class FractalExplorer extends JFrame {
     // }
     private void moveLeft() {
         double curWidth = WIDTH / zoomFactor; // Use width for horizontal movement
-        topLeftX -= curWidth / 6; // Move left by a fraction of the width
+        topLeftX = offset(topLeftX, -curWidth / 6); // Move left by a fraction of the width
         updateFractal();
     }
 
     private void moveRight() {
         double curWidth = WIDTH / zoomFactor; // Use width for horizontal movement
-        topLeftX += curWidth / 6; // Move right by a fraction of the width
+        topLeftX = offset(topLeftX, curWidth / 6); // Move right by a fraction of the width
         updateFractal();
     }
 
+    // Speeds up views with much of the set in them, see TileRenderer.setMarianiSilver()
+    private void toggleMarianiSilver() {
+        engine.setMarianiSilver(!engine.isMarianiSilver());
+        updateFractal();
+    }
+
+    // Next color scheme, applied to the frame as it is. Fractals with colors
+    // of their own keep them.
+    private void nextPalette() {
+        if (palette.scheme == null) {
+            return;
+        }
+        Palette.Scheme[] schemes = Palette.Scheme.values();
+        palette = provider.palette(kernel, schemes[(palette.scheme.ordinal() + 1) % schemes.length], MAX_ITER);
+        engine.setPalette(palette.shifted(cycleOffset));
+        engine.recolor(frameBuffer, canvas::repaint);
+    }
+
+    private void toggleCycling() {
+        if (cycleTimer.isRunning()) {
+            cycleTimer.stop();
+        } else {
+            cycleTimer.start();
+        }
+    }
+
+    // A recolor queues up behind the render in progress, so ticks are skipped
+    // until that and the last tick's recolor are done instead of piling up
+    private void cycle() {
+        if (job != null && !job.isDone() || cycleJob != null && !cycleJob.isDone()) {
+            return;
+        }
+        cycleOffset++;
+        engine.setPalette(palette.shifted(cycleOffset));
+        cycleJob = engine.recolor(frameBuffer, canvas::repaint);
+    }
+
     private void addCanvas() {
         canvas = new Canvas();
-        fractalImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_BGR);
+        frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
         canvas.setVisible(true);
         this.add(canvas, BorderLayout.CENTER);
 
+        picker = new CPicker();
+        this.add(picker, BorderLayout.EAST);
     }
 
     public void setInitialGUIProperties() {
@@ -180,13 +323,13 @@ public class FractalExplorer extends JFrame {
     }
 
     private void adjustZoom(double newX, double newY, double newZoomFactor) {
-        topLeftX += newX / zoomFactor;
-        topLeftY -= newY / zoomFactor;
+        topLeftX = offset(topLeftX, newX / zoomFactor);
+        topLeftY = offset(topLeftY, -newY / zoomFactor);
 
         zoomFactor = newZoomFactor;
 
-        topLeftX -= (WIDTH / 2) / zoomFactor;
-        topLeftY += (HEIGHT / 2) / zoomFactor;
+        topLeftX = offset(topLeftX, -(WIDTH / 2) / zoomFactor);
+        topLeftY = offset(topLeftY, (HEIGHT / 2) / zoomFactor);
 
         updateFractal();
 
@@ -211,6 +354,10 @@ public class FractalExplorer extends JFrame {
             KeyStroke aKey = KeyStroke.getKeyStroke(KeyEvent.VK_A, 0);
             KeyStroke sKey = KeyStroke.getKeyStroke(KeyEvent.VK_S, 0);
             KeyStroke dKey = KeyStroke.getKeyStroke(KeyEvent.VK_D, 0);
+            KeyStroke mKey = KeyStroke.getKeyStroke(KeyEvent.VK_M, 0);
+            KeyStroke pKey = KeyStroke.getKeyStroke(KeyEvent.VK_P, 0);
+            KeyStroke cKey = KeyStroke.getKeyStroke(KeyEvent.VK_C, 0);
+            KeyStroke nKey = KeyStroke.getKeyStroke(KeyEvent.VK_N, 0);
 
             Action wPressed = new AbstractAction() {
                 @Override
@@ -236,21 +383,60 @@ public class FractalExplorer extends JFrame {
                     moveRight();
                 }
             };
+            Action mPressed = new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    toggleMarianiSilver();
+                }
+            };
+            Action pPressed = new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    nextPalette();
+                }
+            };
+            Action cPressed = new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    toggleCycling();
+                }
+            };
+            Action nPressed = new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    nextFractal();
+                }
+            };
 
             this.getInputMap().put(wKey, "w_key");
             this.getInputMap().put(aKey, "a_key");
             this.getInputMap().put(sKey, "s_key");
             this.getInputMap().put(dKey, "d_key");
+            this.getInputMap().put(mKey, "m_key");
+            this.getInputMap().put(pKey, "p_key");
+            this.getInputMap().put(cKey, "c_key");
+            this.getInputMap().put(nKey, "n_key");
 
             this.getActionMap().put("w_key", wPressed);
             this.getActionMap().put("a_key", aPressed);
             this.getActionMap().put("s_key", sPressed);
             this.getActionMap().put("d_key", dPressed);
+            this.getActionMap().put("m_key", mPressed);
+            this.getActionMap().put("p_key", pPressed);
+            this.getActionMap().put("c_key", cPressed);
+            this.getActionMap().put("n_key", nPressed);
 
         }
 
         public void paintComponent(Graphics drawingObj) {
-            drawingObj.drawImage(fractalImage, 0, 0, null);
+            FrameBuffer preview = FractalExplorer.this.preview;
+            if (previewing && preview != null) {
+                ((Graphics2D) drawingObj).setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                drawingObj.drawImage(preview.getImage(), 0, 0, WIDTH, HEIGHT, null);
+                return;
+            }
+            drawingObj.drawImage(frameBuffer.getImage(), 0, 0, null);
         }
 
         @Override
@@ -289,6 +475,82 @@ public class FractalExplorer extends JFrame {
 
     }
 
+    /*
+     * The Mandelbrot set, which maps the Julia sets: c inside it gives a
+     * connected one, c outside a dust, and the most intricate ones are near
+     * its boundary. Pressing or dragging on it picks c, marked by a cross.
+     */
+    private class CPicker extends JPanel implements MouseListener, MouseMotionListener {
+
+        static final int SIZE = 200;
+        static final int ITER = 100;
+
+        // [-2, 1] x [-1.5, 1.5]
+        final Viewport view = new Viewport(-2.0, 1.5, SIZE / 3.0);
+        final FrameBuffer mandelbrot = new FrameBuffer(SIZE, SIZE);
+
+        CPicker() {
+            new FractalRenderer(new MandelbrotKernel(ITER), Palette.of(Palette.Scheme.COSINE, ITER))
+                    .render(view, mandelbrot);
+            addMouseListener(this);
+            addMouseMotionListener(this);
+        }
+
+        public Dimension getPreferredSize() {
+            return new Dimension(SIZE, HEIGHT);
+        }
+
+        public void paintComponent(Graphics drawingObj) {
+            super.paintComponent(drawingObj);
+            drawingObj.drawImage(mandelbrot.getImage(), 0, 0, null);
+            int x = (int) Math.round((c_r - view.topLeftX) * view.zoomFactor);
+            int y = (int) Math.round((c_i + view.topLeftY) * view.zoomFactor);
+            drawingObj.setColor(Color.WHITE);
+            drawingObj.drawLine(x - 4, y, x + 4, y);
+            drawingObj.drawLine(x, y - 4, x, y + 4);
+        }
+
+        private void pick(MouseEvent mouse) {
+            int x = Math.max(0, Math.min(mouse.getX(), SIZE - 1));
+            int y = Math.max(0, Math.min(mouse.getY(), SIZE - 1));
+            dragC(view.getXPos(x), view.getYPos(y));
+        }
+
+        @Override
+        public void mousePressed(MouseEvent mouse) {
+            pick(mouse);
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent mouse) {
+            pick(mouse);
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent mouse) {
+            if (previewing) {
+                showC();
+            }
+            canvas.requestFocusInWindow();
+        }
+
+        @Override
+        public void mouseMoved(MouseEvent mouse) {
+        }
+
+        @Override
+        public void mouseClicked(MouseEvent mouse) {
+        }
+
+        @Override
+        public void mouseEntered(MouseEvent mouse) {
+        }
+
+        @Override
+        public void mouseExited(MouseEvent mouse) {
+        }
+    }
+
     public static void main(String[] args) {
         new FractalExplorer();
     }
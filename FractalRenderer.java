@@ -0,0 +1,519 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fractal.spi.FractalKernel;
+import fractal.spi.Palette;
+import fractal.spi.Precision;
+import fractal.spi.ReferenceOrbit;
+
+/*
+ * Headless rendering core: turns a kernel, a palette and a viewport into
+ * pixels. Knows nothing about Swing, so it can be used from the explorers
+ * as well as from batch tools.
+ */
+public class FractalRenderer {
+
+    final FractalKernel kernel;
+
+    // Swapped for color changes and cycling, see recolor()
+    volatile Palette palette;
+
+    private final TileRenderer tiles;
+
+    // Fixed precision, or null to choose one per frame from the pixel spacing
+    private volatile Precision precision;
+
+    private volatile boolean perturbation = true;
+    private volatile boolean seriesApproximation = true;
+
+    // Orbit of the last frame rendered by perturbation, for its statistics
+    private volatile ReferenceOrbit referenceOrbit;
+
+    private volatile TileCache tileCache;
+
+    // Adaptive iteration limit, or null for the kernel's own
+    private volatile IterationBudget budget;
+
+    // Samples per pixel edge on the edges of the set, 1 for none
+    private volatile int supersampling = 1;
+
+    // Largest distance from the pixel grid, in pixels, at which a pan still
+    // reuses the previous frame
+    static final double PAN_TOLERANCE = 1e-3;
+
+    // Last submitted job, what it renders, where and in which colors, for
+    // incremental pans
+    private FrameBuffer lastFrame;
+    private Viewport lastView;
+    private Palette lastPalette;
+    private TileRenderer.RenderJob lastJob;
+
+    public FractalRenderer(FractalKernel kernel, Palette palette) {
+        this(kernel, palette, new TileRenderer());
+    }
+
+    public FractalRenderer(FractalKernel kernel, Palette palette, TileRenderer tiles) {
+        this.kernel = kernel;
+        this.palette = palette;
+        this.tiles = tiles;
+    }
+
+    // See TileRenderer.setMarianiSilver()
+    public void setMarianiSilver(boolean enabled) {
+        tiles.setMarianiSilver(enabled);
+    }
+
+    public boolean isMarianiSilver() {
+        return tiles.isMarianiSilver();
+    }
+
+    // See TileRenderer.setProgressive()
+    public void setProgressive(boolean enabled) {
+        tiles.setProgressive(enabled);
+    }
+
+    public boolean isProgressive() {
+        return tiles.isProgressive();
+    }
+
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /*
+     * Precision a frame of this view is iterated in: the fixed one if set,
+     * otherwise the cheapest one that still resolves neighbouring pixels.
+     * Formats the kernel doesn't implement are skipped in favour of the next
+     * more precise one, and if there is none left the kernel gets doubles.
+     */
+    public Precision precisionFor(Viewport view) {
+        Precision wanted = precision != null ? precision : Precision.forSpacing(view.pixelSpacing());
+        for (Precision p : Precision.values()) {
+            if (p.compareTo(wanted) >= 0 && kernel.supports(p)) {
+                return p;
+            }
+        }
+        return Precision.DOUBLE;
+    }
+
+    /*
+     * Perturbation mode: frames that would need double-double or BigDecimal
+     * are rendered as double deltas from a single reference orbit through
+     * the centre instead, see ReferenceOrbit. Only applies while the
+     * precision is chosen automatically; a fixed one is always honoured.
+     */
+    public void setPerturbation(boolean enabled) {
+        perturbation = enabled;
+    }
+
+    public boolean isPerturbation() {
+        return perturbation;
+    }
+
+    // See ReferenceOrbit.approximate(); only used together with perturbation
+    public void setSeriesApproximation(boolean enabled) {
+        seriesApproximation = enabled;
+    }
+
+    public boolean isSeriesApproximation() {
+        return seriesApproximation;
+    }
+
+    public ReferenceOrbit getReferenceOrbit() {
+        return referenceOrbit;
+    }
+
+    public boolean usesPerturbation(Viewport view) {
+        return perturbation && precision == null && kernel.supportsPerturbation()
+                && precisionFor(view).compareTo(Precision.DOUBLE) > 0;
+    }
+
+    /*
+     * Cache the counts of rendered tiles go into and come back from, or null
+     * for none. Any number of renderers can share one. Views are snapped to
+     * the pixel lattice while it is set, see TileCache.region().
+     */
+    public void setTileCache(TileCache cache) {
+        tileCache = cache;
+    }
+
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    // Palette for the following renders; recolor() applies it to a frame
+    // that has already been rendered
+    public void setPalette(Palette palette) {
+        this.palette = palette;
+    }
+
+    public Palette getPalette() {
+        return palette;
+    }
+
+    /*
+     * Recolors the frame with the current palette from its iteration counts,
+     * without iterating anything. A render of the frame still in progress
+     * finishes first and is then recolored; see TileRenderer.submitRecolored().
+     */
+    public synchronized TileRenderer.RenderJob recolor(FrameBuffer frame, TileRenderer.TileListener listener) {
+        TileRenderer.RenderJob job = tiles.submitRecolored(frame, palette, listener);
+        if (lastFrame == frame) {
+            lastPalette = palette;
+            lastJob = job;
+        }
+        return job;
+    }
+
+    /*
+     * Adaptive iteration limit: each frame starts at a limit picked from the
+     * zoom and the frames before it, and raises it for the pixels that need
+     * it, see IterationBudget. The kernel's own limit is the base the budget
+     * scales. Kernels without withMaxIter() always use their own limit.
+     */
+    public void setAdaptiveIterations(boolean enabled) {
+        budget = enabled && kernel.withMaxIter(palette.maxIter) != null ? new IterationBudget(palette.maxIter) : null;
+    }
+
+    public boolean isAdaptiveIterations() {
+        return budget != null;
+    }
+
+    /*
+     * Adaptive anti-aliasing: once a frame is rendered, the pixels on an edge
+     * of the set get factor x factor samples each, the rest keep their one;
+     * see TileRenderer.Refiner. 1 turns it off.
+     */
+    public void setSupersampling(int factor) {
+        supersampling = Math.max(1, factor);
+    }
+
+    public int getSupersampling() {
+        return supersampling;
+    }
+
+    // Renders the frame on the pool and blocks until it is done.
+    public void render(Viewport view, FrameBuffer frame) {
+        Palette palette = this.palette;
+        IterationBudget budget = this.budget;
+        int limit = budget != null ? budget.initial(view, frame.width) : palette.maxIter;
+        FractalKernel kernel = kernel(limit);
+
+        TileCache.Region cached = cacheRegion(kernel, view, frame);
+        if (cached != null) {
+            view = cached.view;
+        }
+        int margin = margin(cached);
+        tiles.render(frame, shader(kernel, view, frame.width, frame.height, margin), palette.withMaxIter(limit), cached,
+                refiner(budget, limit, view, frame, margin, palette));
+    }
+
+    /*
+     * Renders in the background, cancelling the previous job of this renderer.
+     *
+     * If the previous job finished on this frame at the same zoom and the
+     * view only moved by whole pixels, its pixels are reused: the frame is
+     * scrolled and just the strips that came into view are rendered. A view
+     * that is off the pixel grid by less than PAN_TOLERANCE is snapped to it.
+     */
+    public synchronized TileRenderer.RenderJob submit(Viewport view, FrameBuffer frame,
+            TileRenderer.TileListener listener) {
+        Palette palette = this.palette;
+        Viewport previous = lastFrame == frame && lastPalette == palette && lastJob.isDone()
+                && !lastJob.isCancelled() ? lastView : null;
+        lastFrame = frame;
+        lastPalette = palette;
+
+        if (previous != null && previous.zoomFactor == view.zoomFactor) {
+            double dx = view.originX.subtract(previous.originX).doubleValue() * view.zoomFactor;
+            double dy = previous.originY.subtract(view.originY).doubleValue() * view.zoomFactor;
+            long rdx = Math.round(dx);
+            long rdy = Math.round(dy);
+            if (Math.abs(dx - rdx) < PAN_TOLERANCE && Math.abs(dy - rdy) < PAN_TOLERANCE
+                    && Math.abs(rdx) < frame.width && Math.abs(rdy) < frame.height) {
+                BigDecimal spacing = new BigDecimal(view.pixelSpacing());
+                lastView = new Viewport(previous.originX.add(spacing.multiply(BigDecimal.valueOf(rdx))),
+                        previous.originY.subtract(spacing.multiply(BigDecimal.valueOf(rdy))), view.zoomFactor);
+                // The strips have to match the limit the rest of the frame ended up at
+                int limit = frame.maxIter;
+                lastJob = tiles.submitScrolled(frame, shader(kernel(limit), lastView, frame.width, frame.height, 0),
+                        palette.withMaxIter(limit), listener, refiner(null, limit, lastView, frame, 0, palette),
+                        (int) rdx, (int) rdy);
+                return lastJob;
+            }
+        }
+
+        IterationBudget budget = this.budget;
+        int limit = budget != null ? budget.initial(view, frame.width) : palette.maxIter;
+        FractalKernel kernel = kernel(limit);
+
+        TileCache.Region cached = cacheRegion(kernel, view, frame);
+        lastView = cached != null ? cached.view : view;
+        int margin = margin(cached);
+        lastJob = tiles.submit(frame, shader(kernel, lastView, frame.width, frame.height, margin),
+                palette.withMaxIter(limit), listener, cached, refiner(budget, limit, lastView, frame, margin, palette));
+        return lastJob;
+    }
+
+    // The kernel with another limit if it has one, else the kernel itself
+    private FractalKernel kernel(int limit) {
+        FractalKernel limited = kernel.withMaxIter(limit);
+        return limited != null ? limited : kernel;
+    }
+
+    /*
+     * Passes over a frame of the view once it is rendered, null if there are
+     * none. With a budget, the limit is raised for as long as the budget
+     * finds the frame unstable, doubling it each time. With supersampling,
+     * the edges are then supersampled at the limit the frame ended up at.
+     */
+    private TileRenderer.Refiner refiner(IterationBudget budget, int initial, Viewport view, FrameBuffer frame,
+            int margin, Palette palette) {
+        int factor = supersampling;
+        if (budget == null && factor <= 1) {
+            return null;
+        }
+        return new TileRenderer.Refiner() {
+            @Override
+            public TileRenderer.Extension extend(FrameBuffer rendered) {
+                if (budget == null) {
+                    return null;
+                }
+                if (budget.unstable(rendered)) {
+                    int limit = 2 * rendered.maxIter;
+                    return new TileRenderer.Extension(
+                            shader(kernel(limit), view, frame.width, frame.height, margin), palette.withMaxIter(limit));
+                }
+                budget.finished(rendered, initial);
+                return null;
+            }
+
+            @Override
+            public TileRenderer.Supersampling supersample(FrameBuffer rendered) {
+                if (factor <= 1) {
+                    return null;
+                }
+                // Sample (x * factor + i, y * factor + j) of this view is i / factor
+                // of a pixel right of and j / factor below pixel (x, y) of the frame
+                Viewport fine = new Viewport(view.originX, view.originY, view.zoomFactor * factor);
+                return new TileRenderer.Supersampling(shader(kernel(rendered.maxIter), fine, frame.width * factor,
+                        frame.height * factor, margin * factor), factor);
+            }
+        };
+    }
+
+    // Tiles of the frame in the tile cache, or null if there is no cache or
+    // the kernel can't be cached
+    private TileCache.Region cacheRegion(FractalKernel kernel, Viewport view, FrameBuffer frame) {
+        TileCache cache = tileCache;
+        String key = kernel.cacheKey();
+        if (cache == null || key == null) {
+            return null;
+        }
+        String mode = usesPerturbation(view) ? (seriesApproximation ? "perturbation+series" : "perturbation")
+                : precisionFor(view).name();
+        if (tiles.isMarianiSilver() && kernel.supportsSubdivision()) {
+            // Filled tiles may differ by the odd pixel, see TileRenderer.setMarianiSilver()
+            mode += "+mariani-silver";
+        }
+        return cache.region(key + "," + mode + "," + view.zoomFactor, view, frame.width, frame.height);
+    }
+
+    // Cached tiles are shaded in full, up to a tile beyond the frame edges
+    private static int margin(TileCache.Region cached) {
+        return cached != null ? cached.tileSize() : 0;
+    }
+
+    public interface StripWriter {
+        void writeStrip(FrameBuffer strip, int rows) throws IOException;
+    }
+
+    /*
+     * Renders a width x height image as horizontal strips of stripHeight rows
+     * and hands each one to the writer in order, so memory use is bounded by
+     * the strip rather than the image. Two strip buffers alternate: the next
+     * strip renders on the pool while the previous one is being written.
+     * The kernel's own limit always applies: an adaptive one would need the
+     * histogram of the whole image before the first strip is written. Strips
+     * aren't supersampled either, edges would need the rows of both neighbours.
+     */
+    public void renderStrips(Viewport view, int width, int height, int stripHeight, StripWriter writer)
+            throws IOException {
+        FrameBuffer[] strips = { new FrameBuffer(width, stripHeight), new FrameBuffer(width, stripHeight) };
+        TileRenderer.PixelShader shader = shader(kernel, view, width, height, 0);
+        ExecutorService output = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> pending = null;
+            for (int y = 0, n = 0; y < height; y += stripHeight, n++) {
+                int rows = Math.min(stripHeight, height - y);
+                // A short last strip gets a buffer of its own height, so only its rows are shaded
+                FrameBuffer strip = rows < stripHeight ? new FrameBuffer(width, rows) : strips[n % 2];
+                int top = y;
+                tiles.render(strip, new TileRenderer.PixelShader() {
+                    @Override
+                    public void prepare() {
+                        shader.prepare();
+                    }
+
+                    @Override
+                    public int shade(int x, int row) {
+                        return shader.shade(x, top + row);
+                    }
+
+                    @Override
+                    public void shadeRow(int x0, int row, int count, int[] out, int offset) {
+                        shader.shadeRow(x0, top + row, count, out, offset);
+                    }
+
+                    @Override
+                    public boolean supportsSubdivision() {
+                        return shader.supportsSubdivision();
+                    }
+                }, palette);
+
+                // Buffer strip n-1 is the one being written, wait before reusing it next round
+                if (pending != null) {
+                    await(pending);
+                }
+                pending = output.submit(() -> {
+                    writer.writeStrip(strip, rows);
+                    return null;
+                });
+            }
+            if (pending != null) {
+                await(pending);
+            }
+        } finally {
+            output.shutdown();
+        }
+    }
+
+    static void await(Future<?> pending) throws IOException {
+        try {
+            pending.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    // margin: pixels beyond each edge that will be shaded as well
+    private TileRenderer.PixelShader shader(FractalKernel kernel, Viewport view, int width, int height, int margin) {
+        TileRenderer.PixelShader shader = kernelShader(kernel, view, width, height, margin);
+        if (!kernel.supportsSubdivision()) {
+            return shader;
+        }
+        // The same, letting Mariani-Silver fill, see TileRenderer.setMarianiSilver()
+        return new TileRenderer.PixelShader() {
+            @Override
+            public void prepare() {
+                shader.prepare();
+            }
+
+            @Override
+            public int shade(int x, int y) {
+                return shader.shade(x, y);
+            }
+
+            @Override
+            public void shadeRow(int x0, int y, int count, int[] out, int offset) {
+                shader.shadeRow(x0, y, count, out, offset);
+            }
+
+            @Override
+            public boolean supportsSubdivision() {
+                return true;
+            }
+        };
+    }
+
+    private TileRenderer.PixelShader kernelShader(FractalKernel kernel, Viewport view, int width, int height,
+            int margin) {
+        if (usesPerturbation(view)) {
+            // Reference through the centre pixel, the orbit most pixels stay close to
+            int cx = width / 2;
+            int cy = height / 2;
+            MathContext mc = Precision.mathContext(view.pixelSpacing());
+            double spacing = view.pixelSpacing();
+            double radius = Math.hypot(Math.max(cx, width - cx) + margin, Math.max(cy, height - cy) + margin) * spacing;
+            boolean series = seriesApproximation;
+            return new TileRenderer.PixelShader() {
+                // Built on the pool by prepare(): at deep zooms the orbit and
+                // series take long enough to stall the event dispatch thread
+                private ReferenceOrbit orbit;
+
+                @Override
+                public synchronized void prepare() {
+                    if (orbit == null) {
+                        ReferenceOrbit built = kernel.referenceOrbit(view.getXPos(cx, mc), view.getYPos(cy, mc), mc);
+                        if (series) {
+                            built.approximate(radius);
+                        }
+                        referenceOrbit = built;
+                        orbit = built;
+                    }
+                }
+
+                @Override
+                public int shade(int x, int y) {
+                    return orbit.iterate((x - cx) * spacing, (y - cy) * spacing);
+                }
+            };
+        }
+
+        switch (precisionFor(view)) {
+            case FLOAT:
+                return new TileRenderer.PixelShader() {
+                    @Override
+                    public int shade(int x, int y) {
+                        return kernel.iterate((float) view.getXPos(x), (float) view.getYPos(y));
+                    }
+
+                    @Override
+                    public void shadeRow(int x0, int y, int count, int[] out, int offset) {
+                        float[] xs = new float[count];
+                        for (int i = 0; i < count; i++) {
+                            xs[i] = (float) view.getXPos(x0 + i);
+                        }
+                        kernel.iterateRow(xs, (float) view.getYPos(y), out, offset, count);
+                    }
+                };
+            case DOUBLE_DOUBLE:
+                return (x, y) -> kernel.iterate(view.getXPosDD(x), view.getYPosDD(y));
+            case BIG_DECIMAL:
+                MathContext mc = Precision.mathContext(view.pixelSpacing());
+                return (x, y) -> kernel.iterate(view.getXPos(x, mc), view.getYPos(y, mc), mc);
+            default:
+                return new TileRenderer.PixelShader() {
+                    @Override
+                    public int shade(int x, int y) {
+                        return kernel.iterate(view.getXPos(x), view.getYPos(y));
+                    }
+
+                    @Override
+                    public void shadeRow(int x0, int y, int count, int[] out, int offset) {
+                        double[] xs = new double[count];
+                        for (int i = 0; i < count; i++) {
+                            xs[i] = view.getXPos(x0 + i);
+                        }
+                        kernel.iterateRow(xs, view.getYPos(y), out, offset, count);
+                    }
+                };
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+
+// The fractals FractalExplorer, RenderCli and the benchmarks offer
+final class Fractals {
+
+    private Fractals() {
+    }
+
+    static List<FractalKernelProvider> builtIn() {
+        return List.of(new Mandelbrot(), new JuliaSet(), new Multibrot(), new Newton(), new BurningShip(),
+                new Tricorn());
+    }
+
+    // The built-in fractals, then those ServiceLoader finds under other names
+    static List<FractalKernelProvider> all() {
+        List<FractalKernelProvider> providers = new ArrayList<>(builtIn());
+        for (FractalKernelProvider provider : ServiceLoader.load(FractalKernelProvider.class)) {
+            if (providers.stream().noneMatch(p -> p.name().equals(provider.name()))) {
+                providers.add(provider);
+            }
+        }
+        return providers;
+    }
+
+    static FractalKernelProvider named(String name) {
+        for (FractalKernelProvider provider : all()) {
+            if (provider.name().equals(name.toLowerCase(Locale.ROOT))) {
+                return provider;
+            }
+        }
+        throw new IllegalArgumentException("Unknown fractal type " + name);
+    }
+
+    /*
+     * SIMD version of the kernel from VectorKernels, or the kernel itself when
+     * it has none, simd/ wasn't compiled or the jdk.incubator.vector module
+     * isn't loaded. Resolved reflectively so this class still links without
+     * either.
+     */
+    static FractalKernel vectorized(FractalKernel kernel) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return kernel;
+        }
+        try {
+            return (FractalKernel) Class.forName("VectorKernels")
+                    .getMethod("of", FractalKernel.class)
+                    .invoke(null, kernel);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return kernel;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import fractal.spi.Palette;
+
+public class FrameBuffer {
+
+    final int width;
+    final int height;
+
+    // Backing array of the image, one packed 0xRRGGBB int per pixel in row-major
+    // order. Writing here skips the color-model conversion and bounds check
+    // that BufferedImage.setRGB does on every call.
+    final int[] pixels;
+
+    // Palette index each pixel was colored from, kept alongside the colors so
+    // renderers can reason about the set (inside vs. outside) and not just RGB.
+    final int[] iterations;
+
+    // Iteration limit the counts were computed with, which is also the count
+    // of points inside the set. Set by TileRenderer; with an adaptive limit
+    // it is only known once the render is done.
+    volatile int maxIter;
+
+    // Counts of the sub-pixel samples of supersampled pixels, null for the
+    // others, or null altogether if nothing is supersampled. Kept so that a
+    // recolor can average the new colors of the samples.
+    int[][] subsamples;
+
+    private final BufferedImage image;
+
+    public FrameBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.iterations = new int[width * height];
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /*
+     * Moves the contents so that pixel (x, y) takes the value of pixel
+     * (x + dx, y + dy), colors, iteration counts and subsamples alike. Pixels
+     * with no source inside the frame keep whatever color and count they
+     * held, but lose their subsamples.
+     */
+    public void scroll(int dx, int dy) {
+        int from = Math.max(0, -dx);
+        int to = Math.min(width, width - dx);
+        if (to <= from || Math.abs(dy) >= height) {
+            return;
+        }
+
+        // Copy rows in the order that never overwrites a row still to be read
+        for (int i = 0; i < height; i++) {
+            int y = dy > 0 ? i : height - 1 - i;
+            int src = y + dy;
+            if (src < 0 || src >= height) {
+                continue;
+            }
+            System.arraycopy(pixels, src * width + from + dx, pixels, y * width + from, to - from);
+            System.arraycopy(iterations, src * width + from + dx, iterations, y * width + from, to - from);
+            if (subsamples != null) {
+                System.arraycopy(subsamples, src * width + from + dx, subsamples, y * width + from, to - from);
+            }
+        }
+
+        if (subsamples != null) {
+            for (int y = 0; y < height; y++) {
+                boolean exposed = y + dy < 0 || y + dy >= height;
+                for (int x = 0; x < width; x++) {
+                    if (exposed || x < from || x >= to) {
+                        subsamples[y * width + x] = null;
+                    }
+                }
+            }
+        }
+    }
+
+    // Colors rows y0 .. y0 + rows - 1 afresh from their iteration counts
+    public void recolor(Palette palette, int y0, int rows) {
+        int[][] subsamples = this.subsamples;
+        for (int i = y0 * width; i < (y0 + rows) * width; i++) {
+            pixels[i] = subsamples != null && subsamples[i] != null ? palette.color(subsamples[i])
+                    : palette.color(iterations[i]);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Adaptive iteration limit for the frames of one renderer.
+ *
+ * A frame starts at a limit estimated from how deep the view is zoomed,
+ * growing linearly with the octaves of zoom, corrected by what the previous
+ * frames turned out to need. Anything beyond that estimate is left to the
+ * doublings below, which only happen where the histogram asks for them. Once it is
+ * rendered, its histogram decides whether the limit was enough: while more
+ * than STABLE_FRACTION of the pixels escape in the upper half of the limit,
+ * the boundary is still coming into view, so the limit is doubled and only
+ * the pixels that hadn't escaped yet are iterated again. Once a doubling
+ * resolves next to nothing, the frame has stabilised.
+ *
+ * Limits are the base one times a power of two, so that a view and its
+ * revisits end up at the same limits and can share cached tiles.
+ */
+public class IterationBudget {
+
+    // Iterations the estimate adds per octave of zoom into a view 4 wide
+    static final int ITERATIONS_PER_OCTAVE = 50;
+
+    // Fraction of the frame escaping in the upper half of a limit below which
+    // a higher one isn't worth it
+    static final double STABLE_FRACTION = 1e-2;
+
+    static final int MIN_ITER = 16;
+    static final int MAX_ITER = 1 << 20;
+
+    // How far the learned correction can go, in doublings
+    static final int MIN_BIAS = -3;
+    static final int MAX_BIAS = 10;
+
+    final int base;
+
+    // Doublings the last frames needed on top of the zoom estimate
+    private int bias;
+
+    public IterationBudget(int base) {
+        this.base = base;
+    }
+
+    // Limit to start a width pixels wide frame of the view at
+    public synchronized int initial(Viewport view, int width) {
+        double span = width * view.pixelSpacing();
+        int octaves = (int) Math.max(0, Math.floor(Math.log(4.0 / span) / Math.log(2)));
+        // base + ITERATIONS_PER_OCTAVE * octaves, rounded up to a power of two times base
+        long estimate = base + (long) ITERATIONS_PER_OCTAVE * octaves;
+        int doublings = 0;
+        while ((long) base << doublings < estimate) {
+            doublings++;
+        }
+        return limit(doublings + bias);
+    }
+
+    private int limit(int doublings) {
+        long limit = doublings >= 0 ? (long) base << Math.min(doublings, 31) : base >> Math.min(-doublings, 31);
+        return (int) Math.max(Math.min(limit, MAX_ITER), Math.min(base, MIN_ITER));
+    }
+
+    // True if the frame, rendered with the limit it records, needs a higher one
+    public boolean unstable(FrameBuffer frame) {
+        int limit = frame.maxIter;
+        return 2L * limit <= MAX_ITER && fraction(frame, limit / 2, limit) >= STABLE_FRACTION;
+    }
+
+    /*
+     * Learns from a finished frame that started at initial: the doublings it
+     * needed are added to the next start, and the halvings it would still
+     * have been stable at are taken off.
+     */
+    public synchronized void finished(FrameBuffer frame, int initial) {
+        int limit = frame.maxIter;
+        int doublings = 0;
+        while ((long) initial << (doublings + 1) <= limit) {
+            doublings++;
+        }
+        if (doublings == 0) {
+            for (int half = limit / 2; half >= MIN_ITER && fraction(frame, half / 2, half) < STABLE_FRACTION; half /= 2) {
+                doublings--;
+            }
+        }
+        bias = Math.max(MIN_BIAS, Math.min(bias + doublings, MAX_BIAS));
+    }
+
+    // Share of the pixels whose count is in [from, to)
+    static double fraction(FrameBuffer frame, int from, int to) {
+        int[] iterations = frame.iterations;
+        int count = 0;
+        for (int n : iterations) {
+            if (n >= from && n < to) {
+                count++;
+            }
+        }
+        return (double) count / iterations.length;
+    }
+}
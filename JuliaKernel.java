@@ -0,0 +1,135 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import fractal.spi.DoubleDouble;
+import fractal.spi.FractalKernel;
+import fractal.spi.Precision;
+
+public class JuliaKernel implements FractalKernel {
+
+    final double c_r;
+    final double c_i;
+    final int maxIter;
+
+    public JuliaKernel(double c_r, double c_i, int maxIter) {
+        this.c_r = c_r;
+        this.c_i = c_i;
+        this.maxIter = maxIter;
+    }
+
+    @Override
+    public JuliaKernel withMaxIter(int maxIter) {
+        return new JuliaKernel(c_r, c_i, maxIter);
+    }
+
+    @Override
+    public int iterate(double z_r, double z_i) {
+        /*
+         * For Julia sets:
+         * z' = z^2 + c
+         * where z starts as the complex point being iterated
+         * and c is a constant complex number.
+         */
+
+        int iterCount = 0;
+
+        // Escape condition: |z|^2 <= 4
+        while (z_r * z_r + z_i * z_i <= 4.0) {
+            double z_r_tmp = z_r;
+
+            // Julia set iteration formula: z' = z^2 + c
+            z_r = z_r * z_r - z_i * z_i + c_r;
+            z_i = 2 * z_r_tmp * z_i + c_i;
+
+            // Check if maximum iterations are reached
+            if (iterCount >= maxIter) {
+                return maxIter; // Point remains bounded
+            }
+            iterCount++;
+        }
+
+        return iterCount; // Point escapes
+    }
+
+    @Override
+    public boolean supports(Precision precision) {
+        return true;
+    }
+
+    @Override
+    public boolean supportsSubdivision() {
+        return true;
+    }
+
+    @Override
+    public String cacheKey() {
+        return "julia," + c_r + "," + c_i + "," + maxIter;
+    }
+
+    @Override
+    public int iterate(float z_r, float z_i) {
+        float c_r = (float) this.c_r;
+        float c_i = (float) this.c_i;
+
+        int iterCount = 0;
+
+        while (z_r * z_r + z_i * z_i <= 4.0f) {
+            float z_r_tmp = z_r;
+
+            z_r = z_r * z_r - z_i * z_i + c_r;
+            z_i = 2 * z_r_tmp * z_i + c_i;
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+        }
+
+        return iterCount;
+    }
+
+    @Override
+    public int iterate(DoubleDouble z_r, DoubleDouble z_i) {
+        int iterCount = 0;
+
+        while (true) {
+            DoubleDouble z_r2 = z_r.square();
+            DoubleDouble z_i2 = z_i.square();
+            if (z_r2.hi + z_i2.hi > 4.0) {
+                return iterCount;
+            }
+
+            z_i = z_r.multiply(z_i).multiply(2.0).add(c_i);
+            z_r = z_r2.subtract(z_i2).add(c_r);
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+        }
+    }
+
+    @Override
+    public int iterate(BigDecimal z_r, BigDecimal z_i, MathContext mc) {
+        BigDecimal c_r = new BigDecimal(this.c_r);
+        BigDecimal c_i = new BigDecimal(this.c_i);
+
+        int iterCount = 0;
+
+        while (true) {
+            BigDecimal z_r2 = z_r.multiply(z_r, mc);
+            BigDecimal z_i2 = z_i.multiply(z_i, mc);
+            if (z_r2.doubleValue() + z_i2.doubleValue() > 4.0) {
+                return iterCount;
+            }
+
+            z_i = z_r.multiply(z_i, mc).multiply(BigDecimal.valueOf(2)).add(c_i, mc);
+            z_r = z_r2.subtract(z_i2).add(c_r, mc);
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+
+// The Mandelbrot set, z' = z^2 + c from z = 0
+public class Mandelbrot implements FractalKernelProvider {
+
+    @Override
+    public String name() {
+        return "mandelbrot";
+    }
+
+    @Override
+    public FractalKernel create(int maxIter) {
+        return new MandelbrotKernel(maxIter);
+    }
+
+    public static void main(String[] args) {
+        new FractalExplorer(new Mandelbrot());
+    }
+}
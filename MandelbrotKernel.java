@@ -0,0 +1,335 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.atomic.LongAdder;
+
+import fractal.spi.DoubleDouble;
+import fractal.spi.FractalKernel;
+import fractal.spi.Precision;
+import fractal.spi.ReferenceOrbit;
+
+public class MandelbrotKernel implements FractalKernel {
+
+    final int maxIter;
+
+    /*
+     * Interior acceleration: points that are known to be inside the set are
+     * answered with maxIter without running the full loop.
+     *  - the main cardioid and the period-2 bulb are tested analytically
+     *  - any other orbit that lands exactly on an earlier value is periodic,
+     *    so it can never escape (Brent's cycle detection)
+     * None of these shortcuts changes the result, only how fast it is found.
+     */
+    private volatile boolean interiorAcceleration = true;
+
+    // Pixels answered by each shortcut since the last resetStats(), shared
+    // with the kernels made by withMaxIter()
+    final LongAdder cardioidHits;
+    final LongAdder bulbHits;
+    final LongAdder periodicHits;
+
+    public MandelbrotKernel(int maxIter) {
+        this.maxIter = maxIter;
+        this.cardioidHits = new LongAdder();
+        this.bulbHits = new LongAdder();
+        this.periodicHits = new LongAdder();
+    }
+
+    private MandelbrotKernel(int maxIter, MandelbrotKernel stats) {
+        this.maxIter = maxIter;
+        this.cardioidHits = stats.cardioidHits;
+        this.bulbHits = stats.bulbHits;
+        this.periodicHits = stats.periodicHits;
+    }
+
+    @Override
+    public MandelbrotKernel withMaxIter(int maxIter) {
+        MandelbrotKernel kernel = new MandelbrotKernel(maxIter, this);
+        kernel.interiorAcceleration = interiorAcceleration;
+        return kernel;
+    }
+
+    public void setInteriorAcceleration(boolean enabled) {
+        interiorAcceleration = enabled;
+    }
+
+    public boolean isInteriorAcceleration() {
+        return interiorAcceleration;
+    }
+
+    @Override
+    public int iterate(double c_r, double c_i) {
+        if (!interiorAcceleration) {
+            return iteratePlain(c_r, c_i);
+        }
+
+        if (knownInterior(c_r, c_i)) {
+            return maxIter;
+        }
+
+        double z_r = 0.0;
+        double z_i = 0.0;
+
+        // Orbit value saved at the last checkpoint; checkpoints double in
+        // distance so cycles of any length are eventually caught
+        double saved_r = 0.0;
+        double saved_i = 0.0;
+        int sinceSaved = 0;
+        int checkpoint = 1;
+
+        int iterCount = 0;
+
+        while (z_r * z_r + z_i * z_i <= 4.0) {
+            double z_r_tmp = z_r;
+
+            z_r = z_r * z_r - z_i * z_i + c_r;
+            z_i = 2 * z_r_tmp * z_i + c_i;
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+
+            if (z_r == saved_r && z_i == saved_i) {
+                periodicHits.increment();
+                return maxIter;
+            }
+            if (++sinceSaved == checkpoint) {
+                saved_r = z_r;
+                saved_i = z_i;
+                sinceSaved = 0;
+                checkpoint <<= 1;
+            }
+        }
+
+        return iterCount;
+    }
+
+    @Override
+    public boolean supports(Precision precision) {
+        return true;
+    }
+
+    @Override
+    public String cacheKey() {
+        return "mandelbrot," + maxIter;
+    }
+
+    @Override
+    public boolean supportsSubdivision() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsPerturbation() {
+        return true;
+    }
+
+    @Override
+    public ReferenceOrbit referenceOrbit(BigDecimal c_r, BigDecimal c_i, MathContext mc) {
+        return new ReferenceOrbit(c_r, c_i, maxIter, mc);
+    }
+
+    boolean knownInterior(double c_r, double c_i) {
+        // Main cardioid: q * (q + (x - 1/4)) <= y^2 / 4, q = (x - 1/4)^2 + y^2
+        double x = c_r - 0.25;
+        double y2 = c_i * c_i;
+        double q = x * x + y2;
+        if (q * (q + x) <= 0.25 * y2) {
+            cardioidHits.increment();
+            return true;
+        }
+
+        // Period-2 bulb: disc of radius 1/4 around -1
+        double x1 = c_r + 1.0;
+        if (x1 * x1 + y2 <= 0.0625) {
+            bulbHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    // Same loop as iterate(double, double) in float
+    @Override
+    public int iterate(float c_r, float c_i) {
+        boolean accelerate = interiorAcceleration;
+        if (accelerate && knownInterior(c_r, c_i)) {
+            return maxIter;
+        }
+
+        float z_r = 0.0f;
+        float z_i = 0.0f;
+        float saved_r = 0.0f;
+        float saved_i = 0.0f;
+        int sinceSaved = 0;
+        int checkpoint = 1;
+
+        int iterCount = 0;
+
+        while (z_r * z_r + z_i * z_i <= 4.0f) {
+            float z_r_tmp = z_r;
+
+            z_r = z_r * z_r - z_i * z_i + c_r;
+            z_i = 2 * z_r_tmp * z_i + c_i;
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+
+            if (accelerate) {
+                if (z_r == saved_r && z_i == saved_i) {
+                    periodicHits.increment();
+                    return maxIter;
+                }
+                if (++sinceSaved == checkpoint) {
+                    saved_r = z_r;
+                    saved_i = z_i;
+                    sinceSaved = 0;
+                    checkpoint <<= 1;
+                }
+            }
+        }
+
+        return iterCount;
+    }
+
+    /*
+     * Deep zoom versions. The cardioid and bulb tests are skipped: done in
+     * double they misjudge points within ~1e-16 of the boundary, which is
+     * exactly where deep zooms go. Brent's check stays, in full precision.
+     */
+    @Override
+    public int iterate(DoubleDouble c_r, DoubleDouble c_i) {
+        boolean accelerate = interiorAcceleration;
+
+        DoubleDouble z_r = DoubleDouble.ZERO;
+        DoubleDouble z_i = DoubleDouble.ZERO;
+        DoubleDouble saved_r = z_r;
+        DoubleDouble saved_i = z_i;
+        int sinceSaved = 0;
+        int checkpoint = 1;
+
+        int iterCount = 0;
+
+        while (true) {
+            DoubleDouble z_r2 = z_r.square();
+            DoubleDouble z_i2 = z_i.square();
+            if (z_r2.hi + z_i2.hi > 4.0) {
+                return iterCount;
+            }
+
+            z_i = z_r.multiply(z_i).multiply(2.0).add(c_i);
+            z_r = z_r2.subtract(z_i2).add(c_r);
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+
+            if (accelerate) {
+                if (z_r.equals(saved_r) && z_i.equals(saved_i)) {
+                    periodicHits.increment();
+                    return maxIter;
+                }
+                if (++sinceSaved == checkpoint) {
+                    saved_r = z_r;
+                    saved_i = z_i;
+                    sinceSaved = 0;
+                    checkpoint <<= 1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int iterate(BigDecimal c_r, BigDecimal c_i, MathContext mc) {
+        boolean accelerate = interiorAcceleration;
+
+        BigDecimal z_r = BigDecimal.ZERO;
+        BigDecimal z_i = BigDecimal.ZERO;
+        BigDecimal saved_r = z_r;
+        BigDecimal saved_i = z_i;
+        int sinceSaved = 0;
+        int checkpoint = 1;
+
+        int iterCount = 0;
+
+        while (true) {
+            BigDecimal z_r2 = z_r.multiply(z_r, mc);
+            BigDecimal z_i2 = z_i.multiply(z_i, mc);
+            if (z_r2.doubleValue() + z_i2.doubleValue() > 4.0) {
+                return iterCount;
+            }
+
+            z_i = z_r.multiply(z_i, mc).multiply(BigDecimal.valueOf(2)).add(c_i, mc);
+            z_r = z_r2.subtract(z_i2).add(c_r, mc);
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+
+            if (accelerate) {
+                if (z_r.compareTo(saved_r) == 0 && z_i.compareTo(saved_i) == 0) {
+                    periodicHits.increment();
+                    return maxIter;
+                }
+                if (++sinceSaved == checkpoint) {
+                    saved_r = z_r;
+                    saved_i = z_i;
+                    sinceSaved = 0;
+                    checkpoint <<= 1;
+                }
+            }
+        }
+    }
+
+    private int iteratePlain(double c_r, double c_i) {
+        /*
+         * let c = c_r + c_i
+         * let z = z_r + z_i
+         * 
+         * z' = z*z + c
+         * = (z_r + z_i)(z_r + z_i) + c_r + c_i
+         * = z_r^2 + 2*z_r*z_i - z_i^2 + c_r + c_i
+         * 
+         * z_r' = z_r^2 - z_i^2 + c_r
+         * z_i' = 2*z_i*z_r + c_i
+         */
+
+        double z_r = 0.0;
+        double z_i = 0.0;
+
+        int iterCount = 0;
+
+        // sq(a^2 + b^2) <= 2
+        // a^2 + b^2 <= 4 since sq is compute heavy
+
+        while (z_r * z_r + z_i * z_i <= 4.0) {
+            double z_r_tmp = z_r;
+
+            z_r = z_r * z_r - z_i * z_i + c_r;
+            z_i = 2 * z_r_tmp * z_i + c_i;
+
+            // point was inside MandleBort set
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+            iterCount++;
+        }
+
+        // Complex point was outside MandleBort set
+        return iterCount;
+    }
+
+    public void resetStats() {
+        cardioidHits.reset();
+        bulbHits.reset();
+        periodicHits.reset();
+    }
+
+    public String stats() {
+        return "cardioid " + cardioidHits.sum() + ", period-2 bulb " + bulbHits.sum()
+                + ", periodic orbit " + periodicHits.sum();
+    }
+}
@@ -0,0 +1,257 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import fractal.spi.DoubleDouble;
+import fractal.spi.FractalKernel;
+import fractal.spi.Precision;
+
+public class MultibrotKernel implements FractalKernel {
+
+    final double degree;
+    final int maxIter;
+
+    // Exponent for the multiplication path, or -1 when the polar path is needed
+    private final int intDegree;
+
+    public MultibrotKernel(double degree, int maxIter) {
+        this.degree = degree;
+        this.maxIter = maxIter;
+        this.intDegree = degree >= 0 && degree == Math.rint(degree) && degree <= Integer.MAX_VALUE
+                ? (int) degree : -1;
+    }
+
+    @Override
+    public MultibrotKernel withMaxIter(int maxIter) {
+        return new MultibrotKernel(degree, maxIter);
+    }
+
+    public boolean isIntegerDegree() {
+        return intDegree >= 0;
+    }
+
+    @Override
+    public int iterate(double c_r, double c_i) {
+        return intDegree >= 0 ? iterateInteger(c_r, c_i) : iteratePolar(c_r, c_i);
+    }
+
+    /*
+     * z' = z^d + c with z^d built by binary exponentiation: square the base
+     * once per bit of d and fold it into the result where the bit is set.
+     * That is log2(d) complex multiplications per iteration and no calls to
+     * pow, sqrt, atan2, cos or sin.
+     */
+    private int iterateInteger(double c_r, double c_i) {
+        double z_r = 0.0;
+        double z_i = 0.0;
+
+        int iterCount = 0;
+
+        while ((z_r * z_r + z_i * z_i) <= 4.0) {
+            double p_r = 1.0;
+            double p_i = 0.0;
+            double b_r = z_r;
+            double b_i = z_i;
+
+            for (int e = intDegree; e != 0; ) {
+                if ((e & 1) != 0) {
+                    double t = p_r * b_r - p_i * b_i;
+                    p_i = p_r * b_i + p_i * b_r;
+                    p_r = t;
+                }
+                e >>>= 1;
+                if (e != 0) {
+                    double t = b_r * b_r - b_i * b_i;
+                    b_i = 2 * b_r * b_i;
+                    b_r = t;
+                }
+            }
+
+            z_r = p_r + c_r;
+            z_i = p_i + c_i;
+
+            if (iterCount >= maxIter) {
+                return maxIter; // Point is inside the set
+            }
+
+            iterCount++;
+        }
+
+        return iterCount; // Point is outside the set
+    }
+
+    // The polar path has no float or deep zoom version
+    @Override
+    public boolean supports(Precision precision) {
+        return precision == Precision.DOUBLE || intDegree >= 0;
+    }
+
+    // Only z^d + c for whole d is a polynomial in c
+    @Override
+    public boolean supportsSubdivision() {
+        return intDegree >= 0;
+    }
+
+    @Override
+    public String cacheKey() {
+        return "multibrot," + degree + "," + maxIter;
+    }
+
+    @Override
+    public int iterate(float c_r, float c_i) {
+        if (intDegree < 0) {
+            return iteratePolar(c_r, c_i);
+        }
+
+        float z_r = 0.0f;
+        float z_i = 0.0f;
+
+        int iterCount = 0;
+
+        while ((z_r * z_r + z_i * z_i) <= 4.0f) {
+            float p_r = 1.0f;
+            float p_i = 0.0f;
+            float b_r = z_r;
+            float b_i = z_i;
+
+            for (int e = intDegree; e != 0; ) {
+                if ((e & 1) != 0) {
+                    float t = p_r * b_r - p_i * b_i;
+                    p_i = p_r * b_i + p_i * b_r;
+                    p_r = t;
+                }
+                e >>>= 1;
+                if (e != 0) {
+                    float t = b_r * b_r - b_i * b_i;
+                    b_i = 2 * b_r * b_i;
+                    b_r = t;
+                }
+            }
+
+            z_r = p_r + c_r;
+            z_i = p_i + c_i;
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+
+            iterCount++;
+        }
+
+        return iterCount;
+    }
+
+    @Override
+    public int iterate(DoubleDouble c_r, DoubleDouble c_i) {
+        if (intDegree < 0) {
+            return iteratePolar(c_r.doubleValue(), c_i.doubleValue());
+        }
+
+        DoubleDouble z_r = DoubleDouble.ZERO;
+        DoubleDouble z_i = DoubleDouble.ZERO;
+
+        int iterCount = 0;
+
+        while (z_r.square().hi + z_i.square().hi <= 4.0) {
+            DoubleDouble p_r = DoubleDouble.valueOf(1.0);
+            DoubleDouble p_i = DoubleDouble.ZERO;
+            DoubleDouble b_r = z_r;
+            DoubleDouble b_i = z_i;
+
+            for (int e = intDegree; e != 0; ) {
+                if ((e & 1) != 0) {
+                    DoubleDouble t = p_r.multiply(b_r).subtract(p_i.multiply(b_i));
+                    p_i = p_r.multiply(b_i).add(p_i.multiply(b_r));
+                    p_r = t;
+                }
+                e >>>= 1;
+                if (e != 0) {
+                    DoubleDouble t = b_r.square().subtract(b_i.square());
+                    b_i = b_r.multiply(b_i).multiply(2.0);
+                    b_r = t;
+                }
+            }
+
+            z_r = p_r.add(c_r);
+            z_i = p_i.add(c_i);
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+
+            iterCount++;
+        }
+
+        return iterCount;
+    }
+
+    @Override
+    public int iterate(BigDecimal c_r, BigDecimal c_i, MathContext mc) {
+        if (intDegree < 0) {
+            return iteratePolar(c_r.doubleValue(), c_i.doubleValue());
+        }
+
+        BigDecimal z_r = BigDecimal.ZERO;
+        BigDecimal z_i = BigDecimal.ZERO;
+
+        int iterCount = 0;
+
+        while (z_r.multiply(z_r, mc).doubleValue() + z_i.multiply(z_i, mc).doubleValue() <= 4.0) {
+            BigDecimal p_r = BigDecimal.ONE;
+            BigDecimal p_i = BigDecimal.ZERO;
+            BigDecimal b_r = z_r;
+            BigDecimal b_i = z_i;
+
+            for (int e = intDegree; e != 0; ) {
+                if ((e & 1) != 0) {
+                    BigDecimal t = p_r.multiply(b_r, mc).subtract(p_i.multiply(b_i, mc), mc);
+                    p_i = p_r.multiply(b_i, mc).add(p_i.multiply(b_r, mc), mc);
+                    p_r = t;
+                }
+                e >>>= 1;
+                if (e != 0) {
+                    BigDecimal t = b_r.multiply(b_r, mc).subtract(b_i.multiply(b_i, mc), mc);
+                    b_i = b_r.multiply(b_i, mc).multiply(BigDecimal.valueOf(2));
+                    b_r = t;
+                }
+            }
+
+            z_r = p_r.add(c_r, mc);
+            z_i = p_i.add(c_i, mc);
+
+            if (iterCount >= maxIter) {
+                return maxIter;
+            }
+
+            iterCount++;
+        }
+
+        return iterCount;
+    }
+
+    /*
+     * z' = z^d + c in polar form, r^d * (cos(d*theta) + i sin(d*theta)).
+     * Only used for negative or fractional degrees.
+     */
+    private int iteratePolar(double c_r, double c_i) {
+        double z_r = 0.0;
+        double z_i = 0.0;
+
+        int iterCount = 0;
+
+        while ((z_r * z_r + z_i * z_i) <= 4.0) {
+            double r = Math.pow(z_r * z_r + z_i * z_i, degree / 2);
+            double theta = Math.atan2(z_i, z_r) * degree;
+
+            z_r = r * Math.cos(theta) + c_r;
+            z_i = r * Math.sin(theta) + c_i;
+
+            if (iterCount >= maxIter) {
+                return maxIter; // Point is inside the set
+            }
+
+            iterCount++;
+        }
+
+        return iterCount; // Point is outside the set
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+import fractal.spi.FractalKernel;
+
+public class NewtonKernel implements FractalKernel {
+
+    // A point counts as converged once it is this close to a root
+    static final double TOLERANCE = 0.001;
+    private static final double TOLERANCE_SQ = TOLERANCE * TOLERANCE;
+
+    final int maxIter;
+
+    private final double[] rootRe;
+    private final double[] rootIm;
+
+    // Coefficients of p(z) = (z - r_0)(z - r_1)...(z - r_n-1), highest power first
+    private final double[] coeffRe;
+    private final double[] coeffIm;
+
+    public NewtonKernel(Complex[] roots, int maxIter) {
+        this.maxIter = maxIter;
+        int degree = roots.length;
+
+        rootRe = new double[degree];
+        rootIm = new double[degree];
+        for (int k = 0; k < degree; k++) {
+            rootRe[k] = roots[k].getReal();
+            rootIm[k] = roots[k].getImag();
+        }
+
+        // Expand the product one root at a time: q(z) * (z - r)
+        coeffRe = new double[degree + 1];
+        coeffIm = new double[degree + 1];
+        coeffRe[0] = 1.0;
+        for (int k = 0; k < degree; k++) {
+            for (int j = k + 1; j > 0; j--) {
+                double re = coeffRe[j] - (coeffRe[j - 1] * rootRe[k] - coeffIm[j - 1] * rootIm[k]);
+                double im = coeffIm[j] - (coeffRe[j - 1] * rootIm[k] + coeffIm[j - 1] * rootRe[k]);
+                coeffRe[j] = re;
+                coeffIm[j] = im;
+            }
+        }
+    }
+
+    // The n-th roots of unity, i.e. the roots of z^n - 1
+    public static Complex[] rootsOfUnity(int n) {
+        Complex[] roots = new Complex[n];
+        for (int k = 0; k < n; k++) {
+            double angle = 2 * Math.PI * k / n;
+            roots[k] = new Complex(Math.cos(angle), Math.sin(angle));
+        }
+        return roots;
+    }
+
+    public int rootCount() {
+        return rootRe.length;
+    }
+
+    @Override
+    public String cacheKey() {
+        return "newton," + Arrays.toString(rootRe) + "," + Arrays.toString(rootIm) + "," + maxIter;
+    }
+
+    /*
+     * Runs z' = z - p(z) / p'(z) from z = x + iy and returns
+     * root * (maxIter + 1) + iterations for the root the point converged to,
+     * or maxIter if it did not converge. Each root thus gets its own band of
+     * maxIter + 1 palette entries.
+     *
+     * z, p and p' all live in locals; p and p' come out of a single Horner
+     * pass, and convergence is tested on squared distances, so the loop
+     * neither allocates nor takes a square root.
+     */
+    @Override
+    public int iterate(double x, double y) {
+        double z_r = x;
+        double z_i = y;
+
+        for (int iter = 0; iter < maxIter; iter++) {
+            double p_r = coeffRe[0];
+            double p_i = coeffIm[0];
+            double dp_r = 0.0;
+            double dp_i = 0.0;
+
+            for (int j = 1; j < coeffRe.length; j++) {
+                double t = dp_r * z_r - dp_i * z_i + p_r;
+                dp_i = dp_r * z_i + dp_i * z_r + p_i;
+                dp_r = t;
+
+                t = p_r * z_r - p_i * z_i + coeffRe[j];
+                p_i = p_r * z_i + p_i * z_r + coeffIm[j];
+                p_r = t;
+            }
+
+            double denominator = dp_r * dp_r + dp_i * dp_i;
+            if (denominator == 0.0) {
+                break; // Critical point, the Newton step is undefined
+            }
+            z_r -= (p_r * dp_r + p_i * dp_i) / denominator;
+            z_i -= (p_i * dp_r - p_r * dp_i) / denominator;
+
+            for (int k = 0; k < rootRe.length; k++) {
+                double d_r = z_r - rootRe[k];
+                double d_i = z_i - rootIm[k];
+                if (d_r * d_r + d_i * d_i < TOLERANCE_SQ) {
+                    return k * (maxIter + 1) + iter;
+                }
+            }
+        }
+        return maxIter;
+    }
+}
@@ -0,0 +1,365 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+import fractal.spi.Palette;
+import fractal.spi.Precision;
+
+/*
+ * Batch renderer for headless machines. Renders any number of viewports in one
+ * JVM and writes one PNG per viewport.
+ *
+ *   java -cp out RenderCli --type mandelbrot --size 1920x1080 --max-iter 500 \
+ *        --palette cosine --view -2.5,1.2,400 --view -0.8,0.2,4000 --out renders
+ *
+ * Options:
+ *   --type       mandelbrot | julia | multibrot | newton | burning-ship |
+ *                tricorn | formula                             (mandelbrot)
+ *                or any FractalKernelProvider on the class path
+ *   --size       WIDTHxHEIGHT                                  (600x600)
+ *   --max-iter   iteration limit                               (200)
+ *   --palette    cosine | grayscale | modular                  (per type)
+ *   --view       topLeftX,topLeftY,zoomFactor, repeatable      (-3,3,100)
+ *                the corner is read exactly, so deep zooms can use any number
+ *                of digits
+ *   --views      file with one topLeftX,topLeftY,zoomFactor per line
+ *   --julia-c    c_r,c_i of the Julia set                      (-0.7,0.27015)
+ *   --degree     degree of the Multibrot                       (3)
+ *   --roots      n for Newton's method on z^n - 1              (3)
+ *   --formula    z' = f(z, c) for --type formula, see FormulaKernel
+ *                                                              (z^3 - z + c)
+ *   --out        output directory                              (.)
+ *   --stream     write strip by strip instead of holding the whole image
+ *   --strip-height  rows per strip when streaming                 (64)
+ *   --mariani-silver  skip the inside of the set by rectangle subdivision;
+ *                Mandelbrot, Julia and whole-degree Multibrot only
+ *   --no-interior-acceleration  iterate every Mandelbrot point in full
+ *   --precision  float | double | double-double | big-decimal  (chosen per view)
+ *   --no-perturbation  iterate deep zooms in double-double or BigDecimal
+ *                throughout instead of against one reference orbit
+ *   --no-series-approximation  start every perturbed pixel at iteration 0
+ *   --simd       use the Vector API kernels where one exists; needs simd/
+ *                compiled, see VectorKernels, and --add-modules
+ *                jdk.incubator.vector, else falls back to scalar
+ *   --adaptive-iterations  pick the limit per view, with --max-iter as the
+ *                base; not for streamed images, which keep --max-iter
+ *   --supersample  n x n samples for pixels on an edge of the set    (1)
+ *                not for streamed images either
+ *   --keyframes  file with one centerX,centerY,zoomFactor[,c_r,c_i] per
+ *                line; renders a zoom video through them as an image
+ *                sequence instead of --view images, see ZoomAnimation.
+ *                c defaults to --julia-c and only matters for julia
+ *   --frames-per-octave  video frames per doubling of the zoom     (30)
+ *
+ * Images above STREAM_THRESHOLD pixels are always streamed, which keeps
+ * heap use at two strips however large the poster is.
+ *
+ * Newton always uses the root palette, so --palette does not apply to it.
+ */
+public class RenderCli {
+
+    // Frames rendered at once. Each frame already runs on every core, so this
+    // only needs to be large enough to hide PNG encoding behind rendering.
+    static final int FRAMES_IN_FLIGHT = 2;
+
+    static final long STREAM_THRESHOLD = 64L * 1024 * 1024;
+
+    String type = "mandelbrot";
+    int width = 600;
+    int height = 600;
+    int maxIter = 200;
+    String palette;
+    double juliaR = JuliaSet.DEFAULT_C_R;
+    double juliaI = JuliaSet.DEFAULT_C_I;
+    double degree = Multibrot.DEFAULT_DEGREE;
+    int roots = Newton.DEFAULT_ROOTS;
+    String formula = Formula.DEFAULT_FORMULA;
+    File outDir = new File(".");
+    boolean stream;
+    int stripHeight = 64;
+    boolean marianiSilver;
+    boolean interiorAcceleration = true;
+    boolean simd;
+    boolean adaptiveIterations;
+    int supersample = 1;
+    boolean perturbation = true;
+    boolean seriesApproximation = true;
+    Precision precision;
+    List<Viewport> views = new ArrayList<>();
+    List<ZoomAnimation.Keyframe> keyframes = new ArrayList<>();
+    List<String> keyframeLines = new ArrayList<>();
+    int framesPerOctave = 30;
+
+    // Images written by the last run()
+    int frames;
+
+    void parse(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--stream")) {
+                stream = true;
+                continue;
+            }
+            if (args[i].equals("--mariani-silver")) {
+                marianiSilver = true;
+                continue;
+            }
+            if (args[i].equals("--no-interior-acceleration")) {
+                interiorAcceleration = false;
+                continue;
+            }
+            if (args[i].equals("--no-perturbation")) {
+                perturbation = false;
+                continue;
+            }
+            if (args[i].equals("--no-series-approximation")) {
+                seriesApproximation = false;
+                continue;
+            }
+            if (args[i].equals("--simd")) {
+                simd = true;
+                continue;
+            }
+            if (args[i].equals("--adaptive-iterations")) {
+                adaptiveIterations = true;
+                continue;
+            }
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--type":
+                    type = value.toLowerCase(Locale.ROOT);
+                    break;
+                case "--size":
+                    String[] size = value.toLowerCase(Locale.ROOT).split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--max-iter":
+                    maxIter = Integer.parseInt(value);
+                    break;
+                case "--supersample":
+                    supersample = Integer.parseInt(value);
+                    break;
+                case "--palette":
+                    palette = value.toUpperCase(Locale.ROOT);
+                    break;
+                case "--view":
+                    views.add(parseView(value));
+                    break;
+                case "--views":
+                    for (String line : Files.readAllLines(Paths.get(value))) {
+                        if (!line.isBlank() && !line.startsWith("#")) {
+                            views.add(parseView(line));
+                        }
+                    }
+                    break;
+                case "--keyframes":
+                    keyframeLines = Files.readAllLines(Paths.get(value));
+                    break;
+                case "--frames-per-octave":
+                    framesPerOctave = Integer.parseInt(value);
+                    break;
+                case "--julia-c":
+                    String[] c = value.split(",");
+                    juliaR = Double.parseDouble(c[0].trim());
+                    juliaI = Double.parseDouble(c[1].trim());
+                    break;
+                case "--degree":
+                    degree = Double.parseDouble(value);
+                    break;
+                case "--roots":
+                    roots = Integer.parseInt(value);
+                    break;
+                case "--formula":
+                    formula = value;
+                    break;
+                case "--precision":
+                    precision = Precision.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+                    break;
+                case "--strip-height":
+                    stripHeight = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    outDir = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            i++;
+        }
+
+        // After the loop, as keyframes fall back on --julia-c
+        for (String line : keyframeLines) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                keyframes.add(parseKeyframe(line));
+            }
+        }
+        if (keyframes.size() == 1) {
+            throw new IllegalArgumentException("A zoom video needs at least two keyframes");
+        }
+
+        if (views.isEmpty()) {
+            views.add(new Viewport(FractalExplorer.DEFAULT_TOP_LEFT_X, FractalExplorer.DEFAULT_TOP_LEFT_Y,
+                    FractalExplorer.DEFAULT_ZOOM));
+        }
+    }
+
+    private static Viewport parseView(String spec) {
+        String[] parts = spec.split(",");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected topLeftX,topLeftY,zoomFactor but got " + spec);
+        }
+        return new Viewport(new BigDecimal(parts[0].trim()), new BigDecimal(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()));
+    }
+
+    private ZoomAnimation.Keyframe parseKeyframe(String spec) {
+        String[] parts = spec.split(",");
+        if (parts.length != 3 && parts.length != 5) {
+            throw new IllegalArgumentException("Expected centerX,centerY,zoomFactor[,c_r,c_i] but got " + spec);
+        }
+        return new ZoomAnimation.Keyframe(new BigDecimal(parts[0].trim()), new BigDecimal(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()),
+                parts.length == 5 ? Double.parseDouble(parts[3].trim()) : juliaR,
+                parts.length == 5 ? Double.parseDouble(parts[4].trim()) : juliaI);
+    }
+
+    FractalRenderer createEngine() {
+        return createEngine(juliaR, juliaI);
+    }
+
+    FractalRenderer createEngine(double juliaR, double juliaI) {
+        FractalKernelProvider provider = provider(juliaR, juliaI);
+        FractalKernel kernel = provider.create(maxIter);
+        if (kernel instanceof MandelbrotKernel) {
+            ((MandelbrotKernel) kernel).setInteriorAcceleration(interiorAcceleration);
+        }
+        Palette colors = provider.palette(kernel, palette != null ? Palette.Scheme.valueOf(palette) : null, maxIter);
+        if (!simd) {
+            return new FractalRenderer(kernel, colors);
+        }
+        FractalKernel vectorized = Fractals.vectorized(kernel);
+        if (vectorized == kernel) {
+            System.err.println("No SIMD kernel available for " + type + ", using the scalar one");
+        }
+        return new FractalRenderer(vectorized, colors);
+    }
+
+    // The built-in fractals with their options, any other by name
+    private FractalKernelProvider provider(double juliaR, double juliaI) {
+        switch (type) {
+            case "julia":
+                return new JuliaSet(juliaR, juliaI);
+            case "multibrot":
+                return new Multibrot(degree);
+            case "newton":
+                return new Newton(roots);
+            case "formula":
+                return new Formula(formula);
+            default:
+                return Fractals.named(type);
+        }
+    }
+
+    private FractalRenderer configure(FractalRenderer engine) {
+        engine.setMarianiSilver(marianiSilver);
+        engine.setPrecision(precision);
+        engine.setPerturbation(perturbation);
+        engine.setSeriesApproximation(seriesApproximation);
+        engine.setAdaptiveIterations(adaptiveIterations);
+        engine.setSupersampling(supersample);
+        return engine;
+    }
+
+    FractalRenderer run() throws Exception {
+        outDir.mkdirs();
+        if (!keyframes.isEmpty()) {
+            return runAnimation();
+        }
+
+        FractalRenderer engine = configure(createEngine());
+        frames = views.size();
+
+        if (stream || (long) width * height > STREAM_THRESHOLD) {
+            for (int i = 0; i < views.size(); i++) {
+                File file = outputFile(i);
+                try (StreamingPngWriter png = new StreamingPngWriter(
+                        new BufferedOutputStream(new FileOutputStream(file)), width, height)) {
+                    engine.renderStrips(views.get(i), width, height, stripHeight,
+                            (strip, rows) -> png.writeRows(strip.pixels, rows));
+                }
+                System.out.println(file);
+            }
+            return engine;
+        }
+
+        ExecutorService frames = Executors.newFixedThreadPool(FRAMES_IN_FLIGHT);
+        try {
+            List<Future<File>> results = new ArrayList<>();
+            for (int i = 0; i < views.size(); i++) {
+                Viewport view = views.get(i);
+                File file = outputFile(i);
+                results.add(frames.submit(() -> {
+                    FrameBuffer frame = new FrameBuffer(width, height);
+                    engine.render(view, frame);
+                    ImageIO.write(frame.getImage(), "png", file);
+                    return file;
+                }));
+            }
+
+            for (Future<File> result : results) {
+                System.out.println(result.get());
+            }
+        } finally {
+            frames.shutdown();
+        }
+        return engine;
+    }
+
+    // Zoom video through the keyframes, one PNG per frame
+    private FractalRenderer runAnimation() throws IOException {
+        FractalRenderer[] last = new FractalRenderer[1];
+        ZoomAnimation animation = new ZoomAnimation((c_r, c_i) -> last[0] = configure(createEngine(c_r, c_i)),
+                width, height, framesPerOctave);
+        frames = animation.render(keyframes, (index, frame) -> {
+            File file = outputFile(index);
+            ImageIO.write(frame.getImage(), "png", file);
+            System.out.println(file);
+        });
+        return last[0];
+    }
+
+    private File outputFile(int index) {
+        return new File(outDir, String.format(Locale.ROOT, "%s-%04d.png", type, index));
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        RenderCli cli = new RenderCli();
+        cli.parse(args);
+
+        long start = System.nanoTime();
+        FractalRenderer engine = cli.run();
+        System.err.printf(Locale.ROOT, "Rendered %d frame(s) in %.1f ms%n", cli.frames,
+                (System.nanoTime() - start) / 1e6);
+        if (engine.kernel instanceof MandelbrotKernel) {
+            System.err.println("Interior shortcuts: " + ((MandelbrotKernel) engine.kernel).stats());
+        }
+        if (engine.getReferenceOrbit() != null) {
+            System.err.println("Perturbation: " + engine.getReferenceOrbit().stats());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/*
+ * Writes an 8-bit RGB PNG one band of rows at a time, so an image far larger
+ * than the heap can be produced as long as each band fits. ImageIO needs the
+ * whole image in memory, which caps posters at a few hundred megapixels.
+ *
+ * Compressed data is cut into IDAT chunks of CHUNK_SIZE bytes as it comes out
+ * of the deflater; nothing but the current band and one chunk is buffered.
+ */
+public class StreamingPngWriter implements Closeable {
+
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final DeflaterOutputStream deflater;
+    // Not ended by closing deflater, which only ends a Deflater it made itself
+    private final Deflater compressor;
+    private final byte[] row;
+    private int rowsWritten;
+
+    public StreamingPngWriter(OutputStream out, int width, int height) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + 3 * width];
+
+        this.out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream ihdr = new DataOutputStream(header);
+        ihdr.writeInt(width);
+        ihdr.writeInt(height);
+        ihdr.writeByte(8); // bit depth
+        ihdr.writeByte(2); // color type: truecolor
+        ihdr.writeByte(0); // compression: deflate
+        ihdr.writeByte(0); // filter method: adaptive
+        ihdr.writeByte(0); // interlace: none
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        this.compressor = new Deflater(Deflater.BEST_SPEED);
+        this.deflater = new DeflaterOutputStream(new IdatStream(), compressor, CHUNK_SIZE);
+    }
+
+    /*
+     * Appends rowCount rows of packed 0xRRGGBB pixels, starting at the first
+     * element of pixels with a row stride of width. Rows use the Sub filter,
+     * which costs one subtraction per byte and compresses the smooth color
+     * bands of an escape-time render far better than no filter at all.
+     */
+    public void writeRows(int[] pixels, int rowCount) throws IOException {
+        if (rowsWritten + rowCount > height) {
+            throw new IllegalStateException("Image only has " + height + " rows");
+        }
+
+        for (int y = 0; y < rowCount; y++) {
+            int offset = y * width;
+            row[0] = 1; // Sub
+            int prevR = 0, prevG = 0, prevB = 0;
+            for (int x = 0; x < width; x++) {
+                int rgb = pixels[offset + x];
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                row[1 + 3 * x] = (byte) (r - prevR);
+                row[2 + 3 * x] = (byte) (g - prevG);
+                row[3 + 3 * x] = (byte) (b - prevB);
+                prevR = r;
+                prevG = g;
+                prevB = b;
+            }
+            deflater.write(row);
+        }
+        rowsWritten += rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IllegalStateException("Wrote " + rowsWritten + " of " + height + " rows");
+            }
+            deflater.finish();
+            deflater.flush();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            // The file is closed even if the image is incomplete
+            try {
+                out.close();
+            } finally {
+                // Frees zlib's native memory now rather than whenever GC gets to it
+                compressor.end();
+            }
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    // Receives deflated bytes and emits them as IDAT chunks
+    private class IdatStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeChunk("IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
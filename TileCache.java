@@ -0,0 +1,169 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import fractal.spi.Precision;
+
+/*
+ * Iteration counts of square tiles, kept across frames so that a view that
+ * was rendered before, like the one a zoom out returns to, comes back
+ * without iterating again.
+ *
+ * Tiles sit on a grid fixed to the pixel lattice of each zoom level, not to
+ * the frame: at zoom z, lattice point (i, j) is the point (i / z, -j / z),
+ * and tile (tx, ty) holds the points tx * size <= i < (tx + 1) * size and
+ * likewise for j. Frames are snapped onto the lattice (see region()), so
+ * any two frames at the same zoom share the tiles they overlap in. With the
+ * explorers zooming by factors of two, those are exactly the levels the
+ * user steps through.
+ *
+ * The least recently used tiles are dropped once the cache holds more than
+ * maxBytes of counts.
+ */
+public class TileCache {
+
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    final int tileSize;
+    private final int maxTiles;
+
+    private final Map<Key, int[]> tiles = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+            return size() > maxTiles;
+        }
+    };
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    public TileCache(long maxBytes) {
+        this(maxBytes, TileRenderer.TILE_SIZE);
+    }
+
+    public TileCache(long maxBytes, int tileSize) {
+        this.tileSize = tileSize;
+        this.maxTiles = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / (4L * tileSize * tileSize)));
+    }
+
+    /*
+     * The tiles covering a width x height frame of the view. The view is
+     * moved onto the lattice first, by less than half a pixel; render
+     * region.view rather than the original so pixels and tiles line up.
+     * frameKey tells apart everything else the counts depend on: fractal,
+     * its parameters, the iteration limit, the precision and the zoom.
+     */
+    public Region region(String frameKey, Viewport view, int width, int height) {
+        BigDecimal zoom = new BigDecimal(view.zoomFactor);
+        BigInteger latticeX = view.originX.multiply(zoom).setScale(0, RoundingMode.HALF_EVEN).toBigIntegerExact();
+        BigInteger latticeY = view.originY.multiply(zoom).setScale(0, RoundingMode.HALF_EVEN).toBigIntegerExact();
+
+        // One digit more than the pixel spacing needs, so the origin divides
+        // back onto the same lattice point
+        MathContext mc = new MathContext(Precision.mathContext(view.pixelSpacing()).getPrecision() + 1);
+        Viewport snapped = new Viewport(new BigDecimal(latticeX).divide(zoom, mc),
+                new BigDecimal(latticeY).divide(zoom, mc), view.zoomFactor);
+
+        // Frame pixel (x, y) is lattice point (latticeX + x, y - latticeY)
+        return new Region(frameKey, snapped, latticeX, latticeY.negate(), width, height);
+    }
+
+    private synchronized int[] get(Key key) {
+        int[] tile = tiles.get(key);
+        (tile != null ? hits : misses).increment();
+        return tile;
+    }
+
+    private synchronized void put(Key key, int[] tile) {
+        tiles.put(key, tile);
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public String stats() {
+        return size() + " tiles of " + maxTiles + ", hits " + hits.sum() + ", misses " + misses.sum();
+    }
+
+    // Tiles of one frame, addressed by column and row from its top left one
+    public class Region {
+        final Viewport view;
+
+        // Frame pixel of the top left corner of tile (0, 0), both <= 0
+        final int offsetX, offsetY;
+        final int columns, rows;
+
+        private final String frameKey;
+        private final BigInteger firstX, firstY;
+
+        private Region(String frameKey, Viewport view, BigInteger latticeX, BigInteger latticeY,
+                int width, int height) {
+            this.frameKey = frameKey;
+            this.view = view;
+            BigInteger size = BigInteger.valueOf(tileSize);
+            firstX = floorDiv(latticeX, size);
+            firstY = floorDiv(latticeY, size);
+            offsetX = firstX.multiply(size).subtract(latticeX).intValueExact();
+            offsetY = firstY.multiply(size).subtract(latticeY).intValueExact();
+            columns = (width - offsetX + tileSize - 1) / tileSize;
+            rows = (height - offsetY + tileSize - 1) / tileSize;
+        }
+
+        int tileSize() {
+            return tileSize;
+        }
+
+        // Counts of the tile in row-major order, or null if not cached
+        int[] get(int column, int row) {
+            return TileCache.this.get(key(column, row));
+        }
+
+        void put(int column, int row, int[] tile) {
+            TileCache.this.put(key(column, row), tile);
+        }
+
+        private Key key(int column, int row) {
+            return new Key(frameKey, firstX.add(BigInteger.valueOf(column)), firstY.add(BigInteger.valueOf(row)));
+        }
+    }
+
+    private static BigInteger floorDiv(BigInteger a, BigInteger b) {
+        BigInteger[] qr = a.divideAndRemainder(b);
+        return qr[1].signum() < 0 ? qr[0].subtract(BigInteger.ONE) : qr[0];
+    }
+
+    private static final class Key {
+        final String frameKey;
+        final BigInteger x, y;
+
+        Key(String frameKey, BigInteger x, BigInteger y) {
+            this.frameKey = frameKey;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return frameKey.equals(other.frameKey) && x.equals(other.x) && y.equals(other.y);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(frameKey, x, y);
+        }
+    }
+}
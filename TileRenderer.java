@@ -0,0 +1,1098 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import fractal.spi.Palette;
+
+public class TileRenderer {
+
+    // Edge length of the smallest unit of work handed to a worker thread.
+    // Small enough that the expensive tiles near the set boundary get spread
+    // across the pool, big enough that task overhead stays negligible.
+    static final int TILE_SIZE = 32;
+
+    // Below this edge length a rectangle is no longer subdivided but filled
+    // pixel by pixel, as its border already makes up most of it.
+    static final int MIN_SUBDIVISION = 8;
+
+    // Spacing of the samples inside a rectangle that Mariani-Silver shades
+    // before it fills the rectangle; see setMarianiSilver()
+    static final int RECHECK_STEP = 4;
+
+    // Block size of the first pass of a progressive render; see setProgressive()
+    static final int COARSEST_STEP = 8;
+
+    // Count difference to a neighbour, relative to the smaller count, above
+    // which a pixel is supersampled; see AntialiasTask
+    static final double EDGE_CONTRAST = 0.25;
+
+    private static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // Palette index (iteration count) of pixel (x, y)
+    public interface PixelShader {
+        int shade(int x, int y);
+
+        // Work needed before the first pixel, such as a reference orbit. Run
+        // on the pool once the job starts, so it never holds up the thread
+        // that submitted it; may be called again on a prepared shader.
+        default void prepare() {
+        }
+
+        // count pixels of row y starting at column x0, stored from out[offset]
+        default void shadeRow(int x0, int y, int count, int[] out, int offset) {
+            for (int i = 0; i < count; i++) {
+                out[offset + i] = shade(x0 + i, y);
+            }
+        }
+
+        // Whether Mariani-Silver may fill a rectangle of these counts from
+        // its border, see FractalKernel.supportsSubdivision(). Shaders that
+        // don't say so have every pixel shaded even in that mode.
+        default boolean supportsSubdivision() {
+            return false;
+        }
+    }
+
+    public interface TileListener {
+        void tileRendered(int x, int y, int w, int h);
+    }
+
+    /*
+     * Further passes over a frame once its render has finished, each asked
+     * for with the frame as it stands:
+     *  - extend() raises the iteration limit, see IterationBudget, by
+     *    returning the shader and palette of a higher one; the pixels that
+     *    reached the current limit are then shaded again. Repeated until it
+     *    returns null.
+     *  - supersample() then returns the shader of the same view at factor
+     *    times the zoom, and the pixels on an edge get factor x factor
+     *    samples each; null leaves them alone.
+     */
+    public interface Refiner {
+        Extension extend(FrameBuffer frame);
+
+        Supersampling supersample(FrameBuffer frame);
+    }
+
+    public static class Extension {
+        final PixelShader shader;
+        final Palette palette;
+
+        public Extension(PixelShader shader, Palette palette) {
+            this.shader = shader;
+            this.palette = palette;
+        }
+    }
+
+    public static class Supersampling {
+        final PixelShader shader;
+        final int factor;
+
+        public Supersampling(PixelShader shader, int factor) {
+            this.shader = shader;
+            this.factor = factor;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+
+    private RenderJob current;
+    private volatile boolean marianiSilver;
+    private volatile boolean progressive;
+
+    public TileRenderer() {
+        this(DEFAULT_POOL, TILE_SIZE);
+    }
+
+    public TileRenderer(ForkJoinPool pool, int tileSize) {
+        this.pool = pool;
+        this.tileSize = tileSize;
+    }
+
+    /*
+     * Mariani-Silver mode: shade only the border of a rectangle, fill it
+     * when the whole border is inside the set, and otherwise split it and
+     * repeat. Large areas inside the set then cost their perimeter instead
+     * of their area.
+     *
+     * Only the inside value is ever filled, and only for shaders whose
+     * kernel has no holes in it (see PixelShader.supportsSubdivision()):
+     * a closed border inside the set then encloses nothing else. Other
+     * shaders, such as Burning Ship, Newton or a formula, are rendered
+     * pixel by pixel in this mode.
+     *
+     * Pixels are samples, though, and a filament of the outside thinner
+     * than a pixel can still cross a border between two of them. Before a
+     * fill the interior is therefore sampled every RECHECK_STEP pixels as
+     * well, and any sample outside the set splits the rectangle instead.
+     * That catches every filament wider than the grid; a narrower one that
+     * slips through both can still leave the odd pixel filled that a full
+     * render would show outside.
+     *
+     * Progressive and cached renders subdivide each tile in their last pass.
+     */
+    public void setMarianiSilver(boolean enabled) {
+        marianiSilver = enabled;
+    }
+
+    public boolean isMarianiSilver() {
+        return marianiSilver;
+    }
+
+    /*
+     * Progressive mode: a first pass shades one pixel in COARSEST_STEP^2 and
+     * shows it as a block, and every pass after that halves the block size
+     * until the frame is at full resolution, the listener hearing about
+     * each one. Samples are never shaded twice, so the full frame costs the
+     * same as without. Mariani-Silver only applies to the last pass.
+     */
+    public void setProgressive(boolean enabled) {
+        progressive = enabled;
+    }
+
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    // Renders the whole image and blocks until it is done.
+    public void render(FrameBuffer frame, PixelShader shader, Palette palette) {
+        render(frame, shader, palette, null);
+    }
+
+    /*
+     * With a cache region, the frame is put together from whole cached tiles
+     * (see TileCache), and missing ones are shaded in full, including the
+     * parts outside the frame, and then cached. Progressive mode applies,
+     * Mariani-Silver to the last pass.
+     */
+    public void render(FrameBuffer frame, PixelShader shader, Palette palette, TileCache.Region cached) {
+        render(frame, shader, palette, cached, null);
+    }
+
+    // With a refiner, its passes follow once the render is done; see Refiner
+    public void render(FrameBuffer frame, PixelShader shader, Palette palette, TileCache.Region cached,
+            Refiner refiner) {
+        RenderJob job = new RenderJob(null, frame, shader, palette, null);
+        // The root starts the job, as in submit(), whatever kind of task it is
+        job.root = rootTask(job, cached, refiner);
+        pool.invoke(job.root);
+    }
+
+    /*
+     * Starts rendering in the background and returns immediately. The listener
+     * is told about every finished tile, from a pool thread, so the caller can
+     * repaint just that region. Submitting again cancels the job in progress.
+     */
+    public synchronized RenderJob submit(FrameBuffer frame, PixelShader shader, Palette palette,
+            TileListener listener) {
+        return submit(frame, shader, palette, listener, null, null);
+    }
+
+    // submit() with a cache region and a refiner, either may be null; see render()
+    public synchronized RenderJob submit(FrameBuffer frame, PixelShader shader, Palette palette,
+            TileListener listener, TileCache.Region cached, Refiner refiner) {
+        if (current != null) {
+            current.cancel();
+        }
+        current = new RenderJob(current, frame, shader, palette, listener);
+        current.root = rootTask(current, cached, refiner);
+        pool.execute(current.root);
+        return current;
+    }
+
+    /*
+     * Like submit(), for a frame that already holds a complete render of the
+     * view moved by (dx, dy) pixels: new pixel (x, y) is old pixel
+     * (x + dx, y + dy). What is still in view is shifted in place, and only
+     * the strips that scrolled in are rendered. The listener hears about
+     * the whole frame once the shift is done. A refiner only gets to
+     * supersample, the strips and the pixels next to them.
+     */
+    public synchronized RenderJob submitScrolled(FrameBuffer frame, PixelShader shader, Palette palette,
+            TileListener listener, Refiner refiner, int dx, int dy) {
+        if (current != null) {
+            current.cancel();
+        }
+        current = new RenderJob(current, frame, shader, palette, listener);
+        current.root = new ScrollTask(current, refiner, dx, dy);
+        pool.execute(current.root);
+        return current;
+    }
+
+    /*
+     * Recolors the frame from the iteration counts it already holds, with a
+     * new palette, which costs a table lookup per pixel instead of a render.
+     * Unlike submit() this doesn't cancel the job in progress but queues up
+     * behind it, so a render that is still running gets recolored once it's
+     * done; cancelling the recolor cancels that render as well.
+     */
+    public synchronized RenderJob submitRecolored(FrameBuffer frame, Palette palette, TileListener listener) {
+        current = new RenderJob(current, frame, null, palette, listener);
+        current.root = new RecolorTask(current, 0, frame.height);
+        pool.execute(current.root);
+        return current;
+    }
+
+    private RecursiveAction rootTask(RenderJob job, TileCache.Region cached, Refiner refiner) {
+        if (refiner != null) {
+            return new RefiningTask(job, rootTask(job, cached, null), refiner);
+        }
+        if (cached != null || progressive) {
+            return new PassesTask(job, cached, progressive ? COARSEST_STEP : 1);
+        }
+        return regionTask(job, 0, 0, job.frame.width, job.frame.height);
+    }
+
+    private RecursiveAction regionTask(RenderJob job, int x0, int y0, int w, int h) {
+        if (subdivides(job)) {
+            return new SubdivisionTask(job, x0, y0, w, h, false);
+        }
+        return new TileTask(job, x0, y0, w, h);
+    }
+
+    // Whether the job's last pass is a Mariani-Silver one, see setMarianiSilver()
+    private boolean subdivides(RenderJob job) {
+        return marianiSilver && job.shader.supportsSubdivision();
+    }
+
+    public static class RenderJob {
+        private volatile boolean cancelled;
+        private RenderJob previous;
+        private RecursiveAction root;
+
+        private final FrameBuffer frame;
+        // Replaced between the passes of a Refiner
+        private PixelShader shader;
+        private Palette palette;
+        private final TileListener listener;
+
+        private RenderJob(RenderJob previous, FrameBuffer frame, PixelShader shader, Palette palette,
+                TileListener listener) {
+            this.previous = previous;
+            this.frame = frame;
+            this.shader = shader;
+            this.palette = palette;
+            this.listener = listener;
+        }
+
+        // Jobs queued behind an earlier one go down with it, see submitRecolored()
+        public void cancel() {
+            for (RenderJob job = this; job != null; job = job.previous) {
+                job.cancelled = true;
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return root == null || root.isDone();
+        }
+
+        // Blocks until the job has finished or given up after a cancel
+        public void await() {
+            root.quietlyJoin();
+        }
+
+        // Start of a job that shades pixels: from here on the counts are its own
+        private void start() {
+            awaitPrevious();
+            if (!cancelled) {
+                shader.prepare();
+            }
+            frame.maxIter = palette.maxIter;
+            frame.subsamples = null;
+        }
+
+        // A cancelled job gives up within one row, but until it has actually
+        // stopped it could still overwrite pixels of the job replacing it.
+        private void awaitPrevious() {
+            if (previous != null) {
+                previous.root.quietlyJoin();
+                previous = null;
+            }
+        }
+
+        /*
+         * Shades a rectangle into the frame a row at a time; false if the job
+         * was cancelled meanwhile. A cancelled row may still have written its
+         * iteration counts, which is harmless: the replacing job only starts
+         * once this one has fully stopped.
+         */
+        private boolean shadeRect(int x0, int y0, int w, int h) {
+            int[] iterations = frame.iterations;
+            int[] pixels = frame.pixels;
+            for (int y = y0; y < y0 + h; y++) {
+                int row = y * frame.width;
+                shader.shadeRow(x0, y, w, iterations, row + x0);
+                if (cancelled) {
+                    return false;
+                }
+                for (int x = row + x0; x < row + x0 + w; x++) {
+                    pixels[x] = palette.color(iterations[x]);
+                }
+            }
+            return true;
+        }
+
+        private void finished(int x0, int y0, int w, int h) {
+            if (listener != null) {
+                listener.tileRendered(x0, y0, w, h);
+            }
+        }
+    }
+
+    /*
+     * Splits the rectangle in half along its longer side until it fits in a
+     * single tile. Forked halves land on the worker's deque, so idle threads
+     * steal the remaining work instead of waiting on a fixed partition.
+     */
+    private class TileTask extends RecursiveAction {
+        private final RenderJob job;
+        private final int x0, y0, w, h;
+
+        TileTask(RenderJob job, int x0, int y0, int w, int h) {
+            this.job = job;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.w = w;
+            this.h = h;
+        }
+
+        @Override
+        protected void compute() {
+            if (this == job.root) {
+                job.start();
+            }
+            if (job.cancelled) {
+                return;
+            }
+
+            if (w <= tileSize && h <= tileSize) {
+                // Walks the tile in memory order, one row at a time.
+                if (job.shadeRect(x0, y0, w, h)) {
+                    job.finished(x0, y0, w, h);
+                }
+                return;
+            }
+
+            if (w >= h) {
+                int half = w / 2;
+                invokeAll(new TileTask(job, x0, y0, half, h),
+                        new TileTask(job, x0 + half, y0, w - half, h));
+            } else {
+                int half = h / 2;
+                invokeAll(new TileTask(job, x0, y0, w, half),
+                        new TileTask(job, x0, y0 + half, w, h - half));
+            }
+        }
+    }
+
+    // Root of a submitScrolled() job
+    private class ScrollTask extends RecursiveAction {
+        private final RenderJob job;
+        private final Refiner refiner;
+        private final int dx, dy;
+
+        ScrollTask(RenderJob job, Refiner refiner, int dx, int dy) {
+            this.job = job;
+            this.refiner = refiner;
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        @Override
+        protected void compute() {
+            // The previous job writes to the same buffers until it has stopped.
+            // Not start(): the supersampled pixels move along with the rest.
+            job.awaitPrevious();
+            job.frame.maxIter = job.palette.maxIter;
+            if (job.cancelled) {
+                return;
+            }
+            job.shader.prepare();
+
+            FrameBuffer frame = job.frame;
+            frame.scroll(dx, dy);
+            job.finished(0, 0, frame.width, frame.height);
+
+            // Exposed columns span the full height, exposed rows the rest
+            int colX = dx > 0 ? frame.width - dx : 0;
+            int colW = Math.abs(dx);
+            int rowY = dy > 0 ? frame.height - dy : 0;
+            int rowH = Math.abs(dy);
+            int rowX = dx < 0 ? colW : 0;
+
+            List<RecursiveAction> strips = new ArrayList<>();
+            if (colW > 0) {
+                strips.add(regionTask(job, colX, 0, colW, frame.height));
+            }
+            if (rowH > 0 && frame.width - colW > 0) {
+                strips.add(regionTask(job, rowX, rowY, frame.width - colW, rowH));
+            }
+            invokeAll(strips);
+
+            Supersampling supersampling = job.cancelled || refiner == null ? null : refiner.supersample(frame);
+            if (supersampling == null) {
+                return;
+            }
+            supersampling.shader.prepare();
+            if (frame.subsamples == null) {
+                frame.subsamples = new int[frame.width * frame.height][];
+            }
+            // The pixels next to the strips have new neighbours as well
+            strips.clear();
+            if (colW > 0) {
+                int x0 = Math.max(colX - 1, 0);
+                strips.add(new AntialiasTask(job, supersampling, x0, 0,
+                        Math.min(colX + colW + 1, frame.width) - x0, frame.height));
+            }
+            if (rowH > 0 && frame.width - colW > 0) {
+                int y0 = Math.max(rowY - 1, 0);
+                strips.add(new AntialiasTask(job, supersampling, rowX, y0, frame.width - colW,
+                        Math.min(rowY + rowH + 1, frame.height) - y0));
+            }
+            invokeAll(strips);
+        }
+    }
+
+    /*
+     * Root of a progressive or cached job. The frame is cut into tiles, or
+     * taken as the tiles of the cache region, and each pass shades every
+     * step-th pixel of every tile still missing, before the next pass halves
+     * the step. A pass only shades the samples the coarser ones don't have,
+     * and shows each one as a step x step block until a finer pass replaces
+     * it. The last pass has step 1, so in the end every pixel is shaded once.
+     */
+    private class PassesTask extends RecursiveAction {
+        private final RenderJob job;
+        private final TileCache.Region region;
+        private final int firstStep;
+
+        PassesTask(RenderJob job, TileCache.Region region, int firstStep) {
+            this.job = job;
+            this.region = region;
+            this.firstStep = firstStep;
+        }
+
+        @Override
+        protected void compute() {
+            job.start();
+            if (job.cancelled) {
+                return;
+            }
+
+            FrameBuffer frame = job.frame;
+            List<PassTile> missing = new ArrayList<>();
+            if (region != null) {
+                int size = region.tileSize();
+                for (int row = 0; row < region.rows; row++) {
+                    for (int column = 0; column < region.columns; column++) {
+                        PassTile tile = new PassTile(region.offsetX + column * size, region.offsetY + row * size,
+                                size, size, region.get(column, row));
+                        if (tile.counts != null) {
+                            tile.show(job, 1);
+                        } else {
+                            tile.counts = new int[size * size];
+                            missing.add(tile);
+                        }
+                    }
+                }
+            } else {
+                for (int y = 0; y < frame.height; y += tileSize) {
+                    for (int x = 0; x < frame.width; x += tileSize) {
+                        int w = Math.min(tileSize, frame.width - x);
+                        int h = Math.min(tileSize, frame.height - y);
+                        missing.add(new PassTile(x, y, w, h, new int[w * h]));
+                    }
+                }
+            }
+
+            for (int step = firstStep; step >= 1; step /= 2) {
+                List<RecursiveAction> pass = new ArrayList<>();
+                for (PassTile tile : missing) {
+                    pass.add(new PassTask(job, tile, step, step == firstStep, step == 1 && subdivides(job)));
+                }
+                invokeAll(pass);
+                if (job.cancelled) {
+                    return; // Only whole tiles get cached
+                }
+            }
+
+            if (region != null) {
+                int size = region.tileSize();
+                for (PassTile tile : missing) {
+                    region.put((tile.x - region.offsetX) / size, (tile.y - region.offsetY) / size, tile.counts);
+                }
+            }
+        }
+    }
+
+    // A tile of a PassesTask, with the counts shaded so far
+    private static class PassTile {
+        final int x, y, w, h;
+        int[] counts;
+
+        PassTile(int x, int y, int w, int h, int[] counts) {
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.counts = counts;
+        }
+
+        // Copies the part inside the frame, each pixel taking the sample at
+        // the top left of its step x step block
+        void show(RenderJob job, int step) {
+            FrameBuffer frame = job.frame;
+            int x0 = Math.max(x, 0);
+            int y0 = Math.max(y, 0);
+            int x1 = Math.min(x + w, frame.width);
+            int y1 = Math.min(y + h, frame.height);
+            if (x1 <= x0 || y1 <= y0) {
+                return;
+            }
+            for (int py = y0; py < y1; py++) {
+                int line = py * frame.width;
+                int sampleRow = (py - y - (py - y) % step) * w;
+                if (step == 1) {
+                    System.arraycopy(counts, sampleRow + x0 - x, frame.iterations, line + x0, x1 - x0);
+                } else {
+                    for (int px = x0; px < x1; px++) {
+                        frame.iterations[line + px] = counts[sampleRow + px - x - (px - x) % step];
+                    }
+                }
+                for (int i = line + x0; i < line + x1; i++) {
+                    frame.pixels[i] = job.palette.color(frame.iterations[i]);
+                }
+            }
+            job.finished(x0, y0, x1 - x0, y1 - y0);
+        }
+    }
+
+    // One pass over one tile
+    private static class PassTask extends RecursiveAction {
+        private final RenderJob job;
+        private final PassTile tile;
+        private final int step;
+        private final boolean first;
+        private final boolean subdivide;
+
+        PassTask(RenderJob job, PassTile tile, int step, boolean first, boolean subdivide) {
+            this.job = job;
+            this.tile = tile;
+            this.step = step;
+            this.first = first;
+            this.subdivide = subdivide;
+        }
+
+        @Override
+        protected void compute() {
+            if (subdivide) {
+                if (subdivide(0, 0, tile.w, tile.h, false)) {
+                    tile.show(job, 1);
+                }
+                return;
+            }
+
+            int[] counts = tile.counts;
+            for (int y = 0; y < tile.h; y += step) {
+                // Samples of the coarser passes sit on every other row and column
+                boolean coarseRow = !first && y % (2 * step) == 0;
+                if (step == 1 && !coarseRow) {
+                    job.shader.shadeRow(tile.x, tile.y + y, tile.w, counts, y * tile.w);
+                } else {
+                    for (int x = coarseRow ? step : 0; x < tile.w; x += coarseRow ? 2 * step : step) {
+                        counts[y * tile.w + x] = job.shader.shade(tile.x + x, tile.y + y);
+                    }
+                }
+                if (job.cancelled) {
+                    return;
+                }
+            }
+            tile.show(job, step);
+        }
+
+        /*
+         * The last pass as a SubdivisionTask does it, within the tile and
+         * without forking: a rectangle whose border, earlier samples and
+         * recheck grid are all inside is filled, anything else is cut in two
+         * along a new line.
+         * Samples of the coarser passes are not shaded again, and a fill
+         * keeps them. False if the job was cancelled meanwhile.
+         */
+        private boolean subdivide(int x0, int y0, int w, int h, boolean bordered) {
+            if (!bordered && !(shadeRect(x0, y0, w, 1) && shadeRect(x0, y0 + h - 1, w, 1)
+                    && shadeRect(x0, y0 + 1, 1, h - 2) && shadeRect(x0 + w - 1, y0 + 1, 1, h - 2))) {
+                return false;
+            }
+            if (w <= 2 || h <= 2) {
+                return true;
+            }
+
+            int inside = job.palette.maxIter;
+            if (sampledAre(x0, y0, w, h, inside) && rechecked(x0, y0, w, h, inside)) {
+                for (int y = y0 + 1; y < y0 + h - 1; y++) {
+                    for (int x = x0 + 1; x < x0 + w - 1; x++) {
+                        if (!sampled(x, y)) {
+                            tile.counts[y * tile.w + x] = inside;
+                        }
+                    }
+                }
+                return true;
+            }
+
+            if (w <= MIN_SUBDIVISION || h <= MIN_SUBDIVISION) {
+                return shadeRect(x0 + 1, y0 + 1, w - 2, h - 2);
+            }
+
+            // The dividing line belongs to both halves
+            if (w >= h) {
+                int mid = x0 + w / 2;
+                return shadeRect(mid, y0 + 1, 1, h - 2)
+                        && subdivide(x0, y0, mid - x0 + 1, h, true)
+                        && subdivide(mid, y0, x0 + w - mid, h, true);
+            }
+            int mid = y0 + h / 2;
+            return shadeRect(x0 + 1, mid, w - 2, 1)
+                    && subdivide(x0, y0, w, mid - y0 + 1, true)
+                    && subdivide(x0, mid, w, y0 + h - mid, true);
+        }
+
+        // Whether a coarser pass has shaded pixel (x, y) of the tile
+        private boolean sampled(int x, int y) {
+            return !first && x % 2 == 0 && y % 2 == 0;
+        }
+
+        // Shades the pixels of the rectangle no coarser pass has; false if cancelled
+        private boolean shadeRect(int x0, int y0, int w, int h) {
+            for (int y = y0; y < y0 + h; y++) {
+                for (int x = x0; x < x0 + w; x++) {
+                    if (!sampled(x, y)) {
+                        tile.counts[y * tile.w + x] = job.shader.shade(tile.x + x, tile.y + y);
+                    }
+                }
+                if (job.cancelled) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Whether the interior pixels on the recheck grid all have count,
+        // shading those no coarser pass has; false as well if cancelled
+        private boolean rechecked(int x0, int y0, int w, int h, int count) {
+            for (int y = y0 + RECHECK_STEP; y < y0 + h - 1; y += RECHECK_STEP) {
+                for (int x = x0 + RECHECK_STEP; x < x0 + w - 1; x += RECHECK_STEP) {
+                    int sample = sampled(x, y) ? tile.counts[y * tile.w + x] : job.shader.shade(tile.x + x, tile.y + y);
+                    if (sample != count) {
+                        return false;
+                    }
+                }
+                if (job.cancelled) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Whether the border of the rectangle and the earlier samples inside it all have count
+        private boolean sampledAre(int x0, int y0, int w, int h, int count) {
+            for (int y = y0; y < y0 + h; y++) {
+                boolean edge = y == y0 || y == y0 + h - 1;
+                for (int x = x0; x < x0 + w; x++) {
+                    if ((edge || x == x0 || x == x0 + w - 1 || sampled(x, y)) && tile.counts[y * tile.w + x] != count) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    // Root of a job with a Refiner: the render, then the refiner's passes
+    private class RefiningTask extends RecursiveAction {
+        private final RenderJob job;
+        private final RecursiveAction render;
+        private final Refiner refiner;
+
+        RefiningTask(RenderJob job, RecursiveAction render, Refiner refiner) {
+            this.job = job;
+            this.render = render;
+            this.refiner = refiner;
+        }
+
+        @Override
+        protected void compute() {
+            job.start();
+            if (job.cancelled) {
+                return;
+            }
+            render.invoke();
+
+            FrameBuffer frame = job.frame;
+            Extension next;
+            while (!job.cancelled && (next = refiner.extend(frame)) != null) {
+                int limit = frame.maxIter;
+                next.shader.prepare();
+                job.shader = next.shader;
+                job.palette = next.palette;
+                frame.maxIter = next.palette.maxIter;
+                new ExtendTask(job, limit, 0, 0, frame.width, frame.height).invoke();
+            }
+
+            Supersampling supersampling = job.cancelled ? null : refiner.supersample(frame);
+            if (supersampling != null) {
+                supersampling.shader.prepare();
+                frame.subsamples = new int[frame.width * frame.height][];
+                new AntialiasTask(job, supersampling, 0, 0, frame.width, frame.height).invoke();
+            }
+        }
+    }
+
+    /*
+     * Shades the pixels of a rectangle that reached limit again, a run of
+     * neighbouring ones at a time, and recolors all of them. Split like a
+     * TileTask.
+     */
+    private class ExtendTask extends RecursiveAction {
+        private final RenderJob job;
+        private final int limit;
+        private final int x0, y0, w, h;
+
+        ExtendTask(RenderJob job, int limit, int x0, int y0, int w, int h) {
+            this.job = job;
+            this.limit = limit;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.w = w;
+            this.h = h;
+        }
+
+        @Override
+        protected void compute() {
+            if (w > tileSize || h > tileSize) {
+                if (w >= h) {
+                    int half = w / 2;
+                    invokeAll(new ExtendTask(job, limit, x0, y0, half, h),
+                            new ExtendTask(job, limit, x0 + half, y0, w - half, h));
+                } else {
+                    int half = h / 2;
+                    invokeAll(new ExtendTask(job, limit, x0, y0, w, half),
+                            new ExtendTask(job, limit, x0, y0 + half, w, h - half));
+                }
+                return;
+            }
+
+            FrameBuffer frame = job.frame;
+            int[] iterations = frame.iterations;
+            for (int y = y0; y < y0 + h; y++) {
+                int row = y * frame.width;
+                for (int x = x0; x < x0 + w; x++) {
+                    if (iterations[row + x] != limit) {
+                        continue;
+                    }
+                    int end = x + 1;
+                    while (end < x0 + w && iterations[row + end] == limit) {
+                        end++;
+                    }
+                    job.shader.shadeRow(x, y, end - x, iterations, row + x);
+                    x = end;
+                }
+                if (job.cancelled) {
+                    return;
+                }
+                for (int i = row + x0; i < row + x0 + w; i++) {
+                    frame.pixels[i] = job.palette.color(iterations[i]);
+                }
+            }
+            job.finished(x0, y0, w, h);
+        }
+    }
+
+    /*
+     * Supersamples the pixels of a rectangle that lie on an edge, which are
+     * those whose count differs from a neighbour's by more than EDGE_CONTRAST
+     * of the smaller one, or that are inside the set next to one that isn't.
+     * Smooth color bands far from the set are left alone that way.
+     *
+     * Refinement is adaptive within the pixel as well. An edge pixel first
+     * gets a 2 x 2 probe: its own sample and the ones half a pixel right, down
+     * and diagonally. Most pixels next to a band edge are on one side of it,
+     * and if the probe agrees by the same test, its mean is the pixel's color.
+     * Only where it doesn't is the full factor x factor grid starting at the
+     * pixel's own sample shaded, reusing the probe. Pixels already
+     * supersampled are skipped. Split like a TileTask.
+     */
+    private class AntialiasTask extends RecursiveAction {
+        private final RenderJob job;
+        private final Supersampling supersampling;
+        private final int x0, y0, w, h;
+
+        AntialiasTask(RenderJob job, Supersampling supersampling, int x0, int y0, int w, int h) {
+            this.job = job;
+            this.supersampling = supersampling;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.w = w;
+            this.h = h;
+        }
+
+        @Override
+        protected void compute() {
+            if (w > tileSize || h > tileSize) {
+                if (w >= h) {
+                    int half = w / 2;
+                    invokeAll(new AntialiasTask(job, supersampling, x0, y0, half, h),
+                            new AntialiasTask(job, supersampling, x0 + half, y0, w - half, h));
+                } else {
+                    int half = h / 2;
+                    invokeAll(new AntialiasTask(job, supersampling, x0, y0, w, half),
+                            new AntialiasTask(job, supersampling, x0, y0 + half, w, h - half));
+                }
+                return;
+            }
+
+            FrameBuffer frame = job.frame;
+            for (int y = y0; y < y0 + h; y++) {
+                for (int x = x0; x < x0 + w; x++) {
+                    int i = y * frame.width + x;
+                    if (frame.subsamples[i] != null || !onEdge(frame, x, y)) {
+                        continue;
+                    }
+                    int[] samples = supersample(frame.iterations[i], x, y, frame.maxIter);
+                    frame.subsamples[i] = samples;
+                    frame.pixels[i] = job.palette.color(samples);
+                }
+                if (job.cancelled) {
+                    return;
+                }
+            }
+            job.finished(x0, y0, w, h);
+        }
+
+        // Samples of pixel (x, y), whose own count is count: the probe if it
+        // agrees, else the full grid in row-major order
+        private int[] supersample(int count, int x, int y, int maxIter) {
+            PixelShader shader = supersampling.shader;
+            int factor = supersampling.factor;
+            int half = factor / 2;
+            int sx = x * factor;
+            int sy = y * factor;
+
+            int[] probe = { count, 0, 0, 0 };
+            shader.shadeRow(sx + half, sy, 1, probe, 1);
+            shader.shadeRow(sx, sy + half, 1, probe, 2);
+            shader.shadeRow(sx + half, sy + half, 1, probe, 3);
+            boolean agrees = true;
+            for (int k = 1; k < probe.length && agrees; k++) {
+                agrees = !contrasts(probe[0], probe[k], maxIter);
+            }
+            if (agrees || factor == 2) {
+                return probe;
+            }
+
+            int[] samples = new int[factor * factor];
+            samples[0] = probe[0];
+            samples[half] = probe[1];
+            samples[half * factor] = probe[2];
+            samples[half * factor + half] = probe[3];
+            for (int row = 0; row < factor; row++) {
+                // The columns in between the probe's, in up to three runs
+                int from = 0;
+                while (from < factor) {
+                    if ((row == 0 || row == half) && (from == 0 || from == half)) {
+                        from++;
+                        continue;
+                    }
+                    int to = from + 1;
+                    while (to < factor && !((row == 0 || row == half) && to == half)) {
+                        to++;
+                    }
+                    shader.shadeRow(sx + from, sy + row, to - from, samples, row * factor + from);
+                    from = to;
+                }
+            }
+            return samples;
+        }
+
+        private boolean onEdge(FrameBuffer frame, int x, int y) {
+            int[] iterations = frame.iterations;
+            int count = iterations[y * frame.width + x];
+            for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, frame.height - 1); ny++) {
+                for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, frame.width - 1); nx++) {
+                    if (contrasts(count, iterations[ny * frame.width + nx], frame.maxIter)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        // True if two counts are far enough apart to show as an edge
+        private boolean contrasts(int a, int b, int maxIter) {
+            return (a == maxIter) != (b == maxIter) || Math.abs(a - b) > EDGE_CONTRAST * Math.min(a, b);
+        }
+    }
+
+    // Root of a submitRecolored() job, split into bands of rows
+    private class RecolorTask extends RecursiveAction {
+        private final RenderJob job;
+        private final int y0, h;
+
+        RecolorTask(RenderJob job, int y0, int h) {
+            this.job = job;
+            this.y0 = y0;
+            this.h = h;
+        }
+
+        @Override
+        protected void compute() {
+            if (this == job.root) {
+                job.awaitPrevious();
+                // The counts may be from another limit than the palette's
+                if (job.frame.maxIter > 0) {
+                    job.palette = job.palette.withMaxIter(job.frame.maxIter);
+                }
+            }
+            if (job.cancelled) {
+                return;
+            }
+
+            if (h <= tileSize) {
+                job.frame.recolor(job.palette, y0, h);
+                job.finished(0, y0, job.frame.width, h);
+                return;
+            }
+
+            int half = h / 2;
+            invokeAll(new RecolorTask(job, y0, half), new RecolorTask(job, y0 + half, h - half));
+        }
+    }
+
+    /*
+     * One rectangle of a Mariani-Silver render. Unless it is the root, its
+     * border has already been shaded by the parent, so the rectangle either
+     * gets filled or is cut in two by shading a single new line across it;
+     * both halves then have complete borders again.
+     */
+    private class SubdivisionTask extends RecursiveAction {
+        private final RenderJob job;
+        private final int x0, y0, w, h;
+        private final boolean bordered;
+
+        SubdivisionTask(RenderJob job, int x0, int y0, int w, int h, boolean bordered) {
+            this.job = job;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.w = w;
+            this.h = h;
+            this.bordered = bordered;
+        }
+
+        @Override
+        protected void compute() {
+            if (this == job.root) {
+                job.start();
+            }
+            if (job.cancelled) {
+                return;
+            }
+            if (!bordered && !shadeBorder()) {
+                return;
+            }
+
+            if (w <= 2 || h <= 2) {
+                job.finished(x0, y0, w, h);
+                return;
+            }
+
+            if (borderIs(job.palette.maxIter) && interiorIs(job.palette.maxIter)) {
+                fillInterior(job.palette.maxIter);
+                job.finished(x0, y0, w, h);
+                return;
+            }
+
+            if (w <= MIN_SUBDIVISION || h <= MIN_SUBDIVISION) {
+                if (job.shadeRect(x0 + 1, y0 + 1, w - 2, h - 2)) {
+                    job.finished(x0, y0, w, h);
+                }
+                return;
+            }
+
+            // The dividing line belongs to both halves
+            if (w >= h) {
+                int mid = x0 + w / 2;
+                if (!job.shadeRect(mid, y0 + 1, 1, h - 2)) {
+                    return;
+                }
+                invokeAll(new SubdivisionTask(job, x0, y0, mid - x0 + 1, h, true),
+                        new SubdivisionTask(job, mid, y0, x0 + w - mid, h, true));
+            } else {
+                int mid = y0 + h / 2;
+                if (!job.shadeRect(x0 + 1, mid, w - 2, 1)) {
+                    return;
+                }
+                invokeAll(new SubdivisionTask(job, x0, y0, w, mid - y0 + 1, true),
+                        new SubdivisionTask(job, x0, mid, w, y0 + h - mid, true));
+            }
+        }
+
+        private boolean shadeBorder() {
+            return job.shadeRect(x0, y0, w, 1)
+                    && job.shadeRect(x0, y0 + h - 1, w, 1)
+                    && job.shadeRect(x0, y0 + 1, 1, h - 2)
+                    && job.shadeRect(x0 + w - 1, y0 + 1, 1, h - 2);
+        }
+
+        private boolean borderIs(int iterCount) {
+            int[] iterations = job.frame.iterations;
+            int width = job.frame.width;
+            int top = y0 * width;
+            int bottom = (y0 + h - 1) * width;
+            for (int x = x0; x < x0 + w; x++) {
+                if (iterations[top + x] != iterCount || iterations[bottom + x] != iterCount) {
+                    return false;
+                }
+            }
+            for (int y = y0 + 1; y < y0 + h - 1; y++) {
+                int row = y * width;
+                if (iterations[row + x0] != iterCount || iterations[row + x0 + w - 1] != iterCount) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Whether the interior pixels on the recheck grid all have iterCount;
+        // false as well if the job was cancelled meanwhile. They are shaded
+        // but not stored, a fill stores the same count.
+        private boolean interiorIs(int iterCount) {
+            for (int y = y0 + RECHECK_STEP; y < y0 + h - 1; y += RECHECK_STEP) {
+                for (int x = x0 + RECHECK_STEP; x < x0 + w - 1; x += RECHECK_STEP) {
+                    if (job.shader.shade(x, y) != iterCount) {
+                        return false;
+                    }
+                }
+                if (job.cancelled) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void fillInterior(int iterCount) {
+            int color = job.palette.color(iterCount);
+            int width = job.frame.width;
+            for (int y = y0 + 1; y < y0 + h - 1; y++) {
+                int row = y * width;
+                Arrays.fill(job.frame.iterations, row + x0 + 1, row + x0 + w - 1, iterCount);
+                Arrays.fill(job.frame.pixels, row + x0 + 1, row + x0 + w - 1, color);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+
+// Tricorn (Mandelbar), z' = conj(z)^2 + c from z = 0
+public class Tricorn implements FractalKernelProvider {
+
+    @Override
+    public String name() {
+        return "tricorn";
+    }
+
+    @Override
+    public FractalKernel create(int maxIter) {
+        return new FoldKernel(FoldKernel.Fold.TRICORN, maxIter);
+    }
+
+    public static void main(String[] args) {
+        new FractalExplorer(new Tricorn());
+    }
+}
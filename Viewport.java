@@ -0,0 +1,66 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import fractal.spi.DoubleDouble;
+
+public class Viewport {
+
+    // Immutable snapshot of the view, taken on the event thread when a render
+    // is submitted so that input arriving mid-render can't skew the frame.
+    final double topLeftX;
+    final double topLeftY;
+    final double zoomFactor;
+
+    // Exact top left corner. The doubles above are this rounded, which stops
+    // resolving pixels somewhere around a zoom of 1e13.
+    final BigDecimal originX;
+    final BigDecimal originY;
+
+    private final DoubleDouble originXDD;
+    private final DoubleDouble originYDD;
+
+    public Viewport(double topLeftX, double topLeftY, double zoomFactor) {
+        this(new BigDecimal(topLeftX), new BigDecimal(topLeftY), zoomFactor);
+    }
+
+    public Viewport(BigDecimal originX, BigDecimal originY, double zoomFactor) {
+        this.originX = originX;
+        this.originY = originY;
+        this.zoomFactor = zoomFactor;
+        this.topLeftX = originX.doubleValue();
+        this.topLeftY = originY.doubleValue();
+        this.originXDD = DoubleDouble.valueOf(originX);
+        this.originYDD = DoubleDouble.valueOf(originY);
+    }
+
+    // Distance between two neighbouring pixels in the complex plane
+    public double pixelSpacing() {
+        return 1.0 / zoomFactor;
+    }
+
+    public double getXPos(double x) {
+        return x / zoomFactor + topLeftX;
+    }
+
+    public double getYPos(double y) {
+        return y / zoomFactor - topLeftY;
+    }
+
+    // Pixel offsets only need to be accurate relative to the spacing, so the
+    // double spacing is fine; it's the sum with the origin that needs the bits.
+    public DoubleDouble getXPosDD(int x) {
+        return originXDD.add(DoubleDouble.product(x, pixelSpacing()));
+    }
+
+    public DoubleDouble getYPosDD(int y) {
+        return DoubleDouble.product(y, pixelSpacing()).subtract(originYDD);
+    }
+
+    public BigDecimal getXPos(int x, MathContext mc) {
+        return originX.add(new BigDecimal(x * pixelSpacing()), mc);
+    }
+
+    public BigDecimal getYPos(int y, MathContext mc) {
+        return new BigDecimal(y * pixelSpacing()).subtract(originY, mc);
+    }
+}
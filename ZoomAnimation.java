@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fractal.spi.Precision;
+
+/*
+ * Zoom videos from keyframes, written out as an image sequence.
+ *
+ * Between two keyframes the zoom changes geometrically, framesPerOctave
+ * frames per doubling, and the center moves so that the point it heads for
+ * stays put on screen, as when zooming in on it with the mouse. The Julia
+ * constant, if any, moves linearly.
+ *
+ * Frames are not rendered one by one. Consecutive frames with the same
+ * constant whose zooms are within a factor of two of each other form a
+ * group, and the group gets one key image at its deepest zoom, large enough
+ * to cover every frame of it. The frames are then resampled from the key,
+ * which always means scaling down, so they are as sharp as rendered ones.
+ * A pure zoom thus renders about four frames' worth of pixels per octave
+ * instead of framesPerOctave frames, and deep zooms compute one reference
+ * orbit per octave rather than per frame.
+ *
+ * Keys render on all cores through the renderer; resampling and writing run
+ * on a pool of their own meanwhile. Only the key being rendered and the one
+ * being resampled are held, so memory doesn't grow with the video.
+ */
+public class ZoomAnimation {
+
+    // Key image area, in frames, up to which a group can grow. A zoom in
+    // place needs 4, frames that also pan need the rest.
+    static final double MAX_KEY_AREA = 6.0;
+
+    public static class Keyframe {
+        final BigDecimal centerX, centerY;
+        final double zoomFactor;
+        final double juliaR, juliaI;
+
+        public Keyframe(BigDecimal centerX, BigDecimal centerY, double zoomFactor, double juliaR, double juliaI) {
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.zoomFactor = zoomFactor;
+            this.juliaR = juliaR;
+            this.juliaI = juliaI;
+        }
+    }
+
+    // Renderer for a Julia constant; fractals without one ignore it
+    public interface EngineFactory {
+        FractalRenderer create(double juliaR, double juliaI);
+    }
+
+    // Called from several threads at once, in no particular order
+    public interface FrameWriter {
+        void writeFrame(int index, FrameBuffer frame) throws IOException;
+    }
+
+    final int width, height;
+    final int framesPerOctave;
+    private final EngineFactory engines;
+
+    // Renderer of the last constant, kept so it can go on learning its
+    // iteration limit and filling its tile cache
+    private FractalRenderer engine;
+    private double engineR = Double.NaN, engineI = Double.NaN;
+
+    public ZoomAnimation(EngineFactory engines, int width, int height, int framesPerOctave) {
+        this.engines = engines;
+        this.width = width;
+        this.height = height;
+        this.framesPerOctave = framesPerOctave;
+    }
+
+    static class Frame {
+        final Viewport view;
+        final double juliaR, juliaI;
+
+        Frame(Viewport view, double juliaR, double juliaI) {
+            this.view = view;
+            this.juliaR = juliaR;
+            this.juliaI = juliaI;
+        }
+    }
+
+    /*
+     * Every frame of the video, the last keyframe included. A segment gets
+     * framesPerOctave frames per doubling or halving of the zoom, and as many
+     * as one octave if the zoom stays the same.
+     */
+    List<Frame> frames(List<Keyframe> keyframes) {
+        List<Frame> frames = new ArrayList<>();
+        for (int k = 0; k + 1 < keyframes.size(); k++) {
+            Keyframe from = keyframes.get(k);
+            Keyframe to = keyframes.get(k + 1);
+            double octaves = Math.abs(Math.log(to.zoomFactor / from.zoomFactor) / Math.log(2));
+            int count = octaves > 0 ? (int) Math.max(1, Math.round(octaves * framesPerOctave)) : framesPerOctave;
+            for (int i = 0; i < count; i++) {
+                frames.add(between(from, to, (double) i / count));
+            }
+        }
+        Keyframe last = keyframes.get(keyframes.size() - 1);
+        frames.add(new Frame(centeredOn(last.centerX, last.centerY, last.zoomFactor), last.juliaR, last.juliaI));
+        return frames;
+    }
+
+    /*
+     * Frame at t in [0, 1) of the way from one keyframe to the next. With the
+     * zoom going from z0 to z1 through z, the center is at s of the way with
+     *
+     *   1 - s = (1/z - 1/z1) / (1/z0 - 1/z1)
+     *
+     * which keeps the destination at the same spot on screen. It is measured
+     * back from the destination in that form, so that deep into the zoom the
+     * error stays relative to the width of the frame, not of the whole path.
+     */
+    private Frame between(Keyframe from, Keyframe to, double t) {
+        double ratio = Math.log(to.zoomFactor / from.zoomFactor);
+        double zoom = from.zoomFactor * Math.exp(t * ratio);
+        double remaining = ratio == 0 ? 1 - t
+                : from.zoomFactor / zoom * Math.expm1(-(1 - t) * ratio) / Math.expm1(-ratio);
+
+        MathContext mc = Precision.mathContext(1 / zoom);
+        BigDecimal back = new BigDecimal(remaining);
+        BigDecimal centerX = to.centerX.subtract(to.centerX.subtract(from.centerX).multiply(back, mc), mc);
+        BigDecimal centerY = to.centerY.subtract(to.centerY.subtract(from.centerY).multiply(back, mc), mc);
+        return new Frame(centeredOn(centerX, centerY, zoom),
+                from.juliaR + t * (to.juliaR - from.juliaR), from.juliaI + t * (to.juliaI - from.juliaI));
+    }
+
+    private Viewport centeredOn(BigDecimal centerX, BigDecimal centerY, double zoom) {
+        MathContext mc = Precision.mathContext(1 / zoom);
+        return new Viewport(centerX.subtract(new BigDecimal(width / 2.0 / zoom), mc),
+                new BigDecimal(height / 2.0 / zoom).subtract(centerY, mc), zoom);
+    }
+
+    // Renders the video and returns how many frames it has
+    public int render(List<Keyframe> keyframes, FrameWriter writer) throws IOException {
+        List<Frame> frames = frames(keyframes);
+        ExecutorService output = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int first = 0; first < frames.size(); ) {
+                Group group = group(frames, first);
+                Frame lead = frames.get(first);
+                FrameBuffer key = new FrameBuffer(group.width, group.height);
+                engine(lead.juliaR, lead.juliaI).render(group.view, key);
+
+                // The previous key is the one being resampled, wait before holding a third
+                for (Future<?> frame : pending) {
+                    FractalRenderer.await(frame);
+                }
+                pending.clear();
+
+                for (int i = first; i < group.end; i++) {
+                    int index = i;
+                    Viewport view = frames.get(i).view;
+                    pending.add(output.submit(() -> {
+                        writer.writeFrame(index, group.single ? key : resample(key, group.view, view));
+                        return null;
+                    }));
+                }
+                first = group.end;
+            }
+            for (Future<?> frame : pending) {
+                FractalRenderer.await(frame);
+            }
+            return frames.size();
+        } finally {
+            output.shutdown();
+        }
+    }
+
+    private FractalRenderer engine(double juliaR, double juliaI) {
+        if (engine == null || Double.compare(juliaR, engineR) != 0 || Double.compare(juliaI, engineI) != 0) {
+            engine = engines.create(juliaR, juliaI);
+            engineR = juliaR;
+            engineI = juliaI;
+        }
+        return engine;
+    }
+
+    // Frames first to end - 1 and the key they are resampled from
+    static class Group {
+        final int end;
+        final Viewport view;
+        final int width, height;
+
+        // The key is the only frame itself
+        final boolean single;
+
+        Group(int end, Viewport view, int width, int height, boolean single) {
+            this.end = end;
+            this.view = view;
+            this.width = width;
+            this.height = height;
+            this.single = single;
+        }
+    }
+
+    /*
+     * The longest run of frames from first on that one key can serve: same
+     * constant, zooms within a factor of two, and a key of at most
+     * MAX_KEY_AREA frames. Extents are tracked in pixels of the first frame,
+     * the key's are those times its zoom over the first one's.
+     */
+    Group group(List<Frame> frames, int first) {
+        Frame lead = frames.get(first);
+        double zoom = lead.view.zoomFactor;
+        double minZoom = zoom, maxZoom = zoom;
+        double left = 0, top = 0, right = width, bottom = height;
+
+        int end = first + 1;
+        for (; end < frames.size(); end++) {
+            Frame frame = frames.get(end);
+            Viewport view = frame.view;
+            double min = Math.min(minZoom, view.zoomFactor);
+            double max = Math.max(maxZoom, view.zoomFactor);
+            if (frame.juliaR != lead.juliaR || frame.juliaI != lead.juliaI || max > 2 * min) {
+                break;
+            }
+            double x = view.originX.subtract(lead.view.originX).doubleValue() * zoom;
+            double y = lead.view.originY.subtract(view.originY).doubleValue() * zoom;
+            double scale = zoom / view.zoomFactor;
+            double l = Math.min(left, x), t = Math.min(top, y);
+            double r = Math.max(right, x + width * scale), b = Math.max(bottom, y + height * scale);
+            double keyScale = max / zoom;
+            if ((r - l) * (b - t) * keyScale * keyScale > MAX_KEY_AREA * width * height) {
+                break;
+            }
+            minZoom = min;
+            maxZoom = max;
+            left = l;
+            top = t;
+            right = r;
+            bottom = b;
+        }
+
+        if (end == first + 1) {
+            return new Group(end, lead.view, width, height, true);
+        }
+
+        // A pixel of margin on either side for the bilinear taps
+        double keyScale = maxZoom / zoom;
+        int x0 = (int) Math.floor(left * keyScale) - 1;
+        int y0 = (int) Math.floor(top * keyScale) - 1;
+        int keyWidth = (int) Math.ceil(right * keyScale) + 2 - x0;
+        int keyHeight = (int) Math.ceil(bottom * keyScale) + 2 - y0;
+        MathContext mc = Precision.mathContext(1 / maxZoom);
+        Viewport view = new Viewport(lead.view.originX.add(new BigDecimal(x0 / maxZoom), mc),
+                lead.view.originY.subtract(new BigDecimal(y0 / maxZoom), mc), maxZoom);
+        return new Group(end, view, keyWidth, keyHeight, false);
+    }
+
+    /*
+     * Frame of the view cut out of a key of a deeper or equal zoom. Each
+     * pixel averages two bilinear taps each way around its point, spread over
+     * the key pixels it covers: together they come close to a box filter over
+     * them, and reduce to plain bilinear at the same zoom. The filter is
+     * separable, so a row of the frame is first filtered down from 4 rows of
+     * the key into one line, and the pixels then from 4 columns of that.
+     */
+    FrameBuffer resample(FrameBuffer key, Viewport keyView, Viewport view) {
+        FrameBuffer frame = new FrameBuffer(width, height);
+        double scale = keyView.zoomFactor / view.zoomFactor;
+        double x0 = view.originX.subtract(keyView.originX).doubleValue() * keyView.zoomFactor;
+        double y0 = keyView.originY.subtract(view.originY).doubleValue() * keyView.zoomFactor;
+
+        int[] columns = new int[width];
+        float[] columnWeights = new float[4 * width];
+        weights(x0, scale, key.width, columns, columnWeights);
+        int[] rows = new int[height];
+        float[] rowWeights = new float[4 * height];
+        weights(y0, scale, key.height, rows, rowWeights);
+
+        int from = columns[0];
+        int to = columns[width - 1] + 4;
+        float[] red = new float[key.width];
+        float[] green = new float[key.width];
+        float[] blue = new float[key.width];
+        for (int y = 0; y < height; y++) {
+            Arrays.fill(red, from, to, 0f);
+            Arrays.fill(green, from, to, 0f);
+            Arrays.fill(blue, from, to, 0f);
+            for (int j = 0; j < 4; j++) {
+                float w = rowWeights[4 * y + j];
+                if (w == 0) {
+                    continue;
+                }
+                int offset = (rows[y] + j) * key.width;
+                for (int x = from; x < to; x++) {
+                    int rgb = key.pixels[offset + x];
+                    red[x] += w * (rgb >> 16 & 0xFF);
+                    green[x] += w * (rgb >> 8 & 0xFF);
+                    blue[x] += w * (rgb & 0xFF);
+                }
+            }
+
+            for (int x = 0; x < width; x++) {
+                float r = 0, g = 0, b = 0;
+                for (int i = 0; i < 4; i++) {
+                    float w = columnWeights[4 * x + i];
+                    r += w * red[columns[x] + i];
+                    g += w * green[columns[x] + i];
+                    b += w * blue[columns[x] + i];
+                }
+                frame.pixels[y * width + x] = Math.round(r) << 16 | Math.round(g) << 8 | Math.round(b);
+            }
+        }
+        return frame;
+    }
+
+    /*
+     * Filter along one axis: frame pixel i sits at key position start + i *
+     * scale and takes weights[4 * i + k] of key pixel first[i] + k. It is
+     * the mean of linear interpolation at (scale - 1) / 2 either side.
+     */
+    private static void weights(double start, double scale, int size, int[] first, float[] weights) {
+        double tap = (scale - 1) / 2;
+        for (int i = 0; i < first.length; i++) {
+            double position = start + i * scale;
+            int lowest = Math.max(0, Math.min((int) Math.floor(position - tap), size - 4));
+            first[i] = lowest;
+            for (int side = -1; side <= 1; side += 2) {
+                double q = Math.max(0, Math.min(position + side * tap, size - 1));
+                int k = (int) q;
+                double fraction = q - k;
+                weights[4 * i + k - lowest] += (float) ((1 - fraction) / 2);
+                if (fraction > 0) {
+                    weights[4 * i + k + 1 - lowest] += (float) (fraction / 2);
+                }
+            }
+        }
+    }
+}
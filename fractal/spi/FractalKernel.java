@@ -0,0 +1,91 @@
+package fractal.spi;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+public interface FractalKernel {
+
+    // Iteration count for the point (x, y) of the complex plane, as an index
+    // into the palette the kernel is rendered with.
+    int iterate(double x, double y);
+
+    // Batch variant for count points (xs[i], y), stored from out[offset].
+    // Kernels that can work on several points at once override this.
+    default void iterateRow(double[] xs, double y, int[] out, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = iterate(xs[i], y);
+        }
+    }
+
+    /*
+     * The same iteration in the other formats of Precision. A kernel lists the
+     * ones it really implements in supports(); the defaults below just round
+     * to double so that every kernel can still be called at any precision.
+     */
+    default boolean supports(Precision precision) {
+        return precision == Precision.DOUBLE;
+    }
+
+    default int iterate(float x, float y) {
+        return iterate((double) x, (double) y);
+    }
+
+    default void iterateRow(float[] xs, float y, int[] out, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = iterate(xs[i], y);
+        }
+    }
+
+    default int iterate(DoubleDouble x, DoubleDouble y) {
+        return iterate(x.doubleValue(), y.doubleValue());
+    }
+
+    default int iterate(BigDecimal x, BigDecimal y, MathContext mc) {
+        return iterate(x.doubleValue(), y.doubleValue());
+    }
+
+    /*
+     * Perturbation form, see ReferenceOrbit: one orbit around (c_r, c_i) in
+     * high precision that every nearby pixel is then iterated against in
+     * double. Only for kernels where supportsPerturbation() is true.
+     */
+    default boolean supportsPerturbation() {
+        return false;
+    }
+
+    default ReferenceOrbit referenceOrbit(BigDecimal c_r, BigDecimal c_i, MathContext mc) {
+        throw new UnsupportedOperationException(getClass().getName() + " has no perturbation form");
+    }
+
+    /*
+     * Whether the points that reach the limit form a set without holes, so
+     * that a closed curve of them encloses only more of them. That holds
+     * when the iteration is a polynomial in the point, as for Mandelbrot and
+     * Julia sets: the points where it stays bounded for n steps are then
+     * full by the maximum modulus principle. Mariani-Silver (see
+     * TileRenderer.setMarianiSilver()) only fills rectangles for kernels
+     * returning true; the others are shaded pixel by pixel.
+     */
+    default boolean supportsSubdivision() {
+        return false;
+    }
+
+    /*
+     * The same kernel with another iteration limit, for an adaptive limit
+     * (see IterationBudget), or null if the limit can't change. Counts below
+     * the old limit must stay the same, only points that hadn't escaped by
+     * then may get a different one.
+     */
+    default FractalKernel withMaxIter(int maxIter) {
+        return null;
+    }
+
+    /*
+     * What the counts depend on besides the point, for TileCache: fractal,
+     * parameters and iteration limit. Kernels returning equal keys must
+     * return equal counts. null if the kernel can't be cached.
+     */
+    default String cacheKey() {
+        return null;
+    }
+}
@@ -0,0 +1,40 @@
+package fractal.spi;
+
+/*
+ * A kind of fractal, as FractalExplorer, RenderCli and the benchmarks see it: a
+ * name, a kernel and the colors that go with it. They all render through
+ * FractalRenderer, so a kernel added here gets every one of its
+ * optimisations and shows up in the benchmarks on the same path.
+ *
+ * The built-in fractals are listed in Fractals.builtIn(). Others are found
+ * with ServiceLoader: a jar on the class path with a public provider class,
+ * which needs a public no-argument constructor, named in its
+ * META-INF/services/fractal.spi.FractalKernelProvider. Such a jar only sees
+ * this package. sample-provider/ holds one, built by gradle sampleProviderJar.
+ */
+public interface FractalKernelProvider {
+
+    // Lower case, as in RenderCli --type
+    String name();
+
+    FractalKernel create(int maxIter);
+
+    /*
+     * Fractals with a complex constant besides the point, such as Julia sets,
+     * return true and take it in create(maxIter, c_r, c_i). The explorer then
+     * lets c be picked on the Mandelbrot set.
+     */
+    default boolean hasConstant() {
+        return false;
+    }
+
+    default FractalKernel create(int maxIter, double c_r, double c_i) {
+        throw new UnsupportedOperationException(name() + " has no constant");
+    }
+
+    // Colors for the kernel's counts in scheme, or in the fractal's own
+    // colors if scheme is null or doesn't suit it
+    default Palette palette(FractalKernel kernel, Palette.Scheme scheme, int maxIter) {
+        return Palette.of(scheme != null ? scheme : Palette.Scheme.COSINE, maxIter);
+    }
+}
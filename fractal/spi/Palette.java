@@ -0,0 +1,140 @@
+package fractal.spi;
+
+import java.awt.Color;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Palette {
+
+    public enum Scheme {
+        // Smooth hue/saturation/brightness waves, used by FractalExplorer
+        COSINE {
+            public int color(int iterCount, int maxIter) {
+                double hue = 0.7 + 0.3 * Math.cos(iterCount * 0.1);
+                double saturation = 0.5 + 0.5 * Math.cos(iterCount * 0.2);
+                double brightness = 0.5 + 0.5 * Math.sin(iterCount * 0.3);
+
+                return Color.getHSBColor((float) hue, (float) saturation, (float) brightness).getRGB();
+            }
+        },
+        // Linear ramp from black to white over the iteration range, used by Multibrot
+        GRAYSCALE {
+            public int color(int iterCount, int maxIter) {
+                int gray = (int) (255.0 * iterCount / maxIter);
+                return new Color(gray, gray, gray).getRGB();
+            }
+        },
+        // Channels wrapping at different rates, used by JuliaSet and Newton
+        MODULAR {
+            public int color(int iterCount, int maxIter) {
+                int red = (iterCount * 9) % 256;
+                int green = (iterCount * 7) % 256;
+                int blue = (iterCount * 3) % 256;
+                return new Color(red, green, blue).getRGB();
+            }
+        };
+
+        public abstract int color(int iterCount, int maxIter);
+    }
+
+    private static final Map<String, Palette> CACHE = new ConcurrentHashMap<>();
+
+    public final Scheme scheme; // null for root palettes
+    public final int maxIter;
+
+    // Entries the colors are cycled by, see shifted()
+    final int offset;
+
+    // One entry per possible iteration count; the last one is for points
+    // inside the set.
+    private final int[] table;
+
+    private Palette(Scheme scheme, int maxIter, int[] table) {
+        this(scheme, maxIter, table, 0);
+    }
+
+    private Palette(Scheme scheme, int maxIter, int[] table, int offset) {
+        this.scheme = scheme;
+        this.maxIter = maxIter;
+        this.table = table;
+        this.offset = offset;
+    }
+
+    // Tables are built once per scheme and iteration limit and then shared.
+    public static Palette of(Scheme scheme, int maxIter) {
+        return CACHE.computeIfAbsent(scheme + ":" + maxIter, key -> {
+            int[] table = new int[maxIter + 1];
+            for (int i = 0; i < maxIter; i++) {
+                table[i] = scheme.color(i, maxIter);
+            }
+            table[maxIter] = Color.BLACK.getRGB(); // Points inside the set are black
+            return new Palette(scheme, maxIter, table);
+        });
+    }
+
+    /*
+     * Palette for root-finding fractals, indexed by root * (maxIter + 1) + iterations
+     * as returned by NewtonKernel. Every root gets its own hue, which darkens the
+     * longer the point took to converge.
+     */
+    public static Palette forRoots(int rootCount, int maxIter) {
+        return CACHE.computeIfAbsent("ROOTS" + rootCount + ":" + maxIter, key -> {
+            int[] table = new int[rootCount * (maxIter + 1)];
+            for (int root = 0; root < rootCount; root++) {
+                float hue = (float) root / rootCount;
+                for (int i = 0; i < maxIter; i++) {
+                    float brightness = (float) Math.max(0.2, 1.0 - i / 40.0);
+                    table[root * (maxIter + 1) + i] = Color.getHSBColor(hue, 1.0f, brightness).getRGB();
+                }
+                table[root * (maxIter + 1) + maxIter] = Color.BLACK.getRGB(); // Did not converge
+            }
+            return new Palette(null, maxIter, table);
+        });
+    }
+
+    /*
+     * The same palette cycled by offset entries, for color cycling: count n
+     * gets the color of n + offset, wrapping around. The inside color of
+     * every block stays put. Not cached, as an animation asks for a new
+     * offset every frame.
+     */
+    public Palette shifted(int offset) {
+        int period = maxIter + 1;
+        int[] shifted = new int[table.length];
+        for (int block = 0; block < table.length; block += period) {
+            for (int i = 0; i < maxIter; i++) {
+                shifted[block + i] = table[block + Math.floorMod(i + offset, maxIter)];
+            }
+            shifted[block + maxIter] = table[block + maxIter];
+        }
+        return new Palette(scheme, maxIter, shifted, this.offset + offset);
+    }
+
+    // The same colors for another iteration limit, as with an adaptive one
+    public Palette withMaxIter(int maxIter) {
+        if (maxIter == this.maxIter) {
+            return this;
+        }
+        Palette palette = scheme != null ? of(scheme, maxIter)
+                : forRoots(table.length / (this.maxIter + 1), maxIter);
+        return offset != 0 ? palette.shifted(offset) : palette;
+    }
+
+    public int color(int iterCount) {
+        return table[iterCount];
+    }
+
+    // Mean color of several samples, channel by channel
+    public int color(int[] iterCounts) {
+        int red = 0, green = 0, blue = 0;
+        for (int n : iterCounts) {
+            int rgb = table[n];
+            red += (rgb >> 16) & 0xFF;
+            green += (rgb >> 8) & 0xFF;
+            blue += rgb & 0xFF;
+        }
+        int samples = iterCounts.length;
+        int half = samples / 2;
+        return 0xFF000000 | (red + half) / samples << 16 | (green + half) / samples << 8 | (blue + half) / samples;
+    }
+}
@@ -0,0 +1,55 @@
+package fractal.spi;
+
+import java.math.MathContext;
+
+/*
+ * Number formats a frame can be iterated in, cheapest first. The renderer
+ * picks the cheapest one whose rounding error stays well below the distance
+ * between two pixels; past that, neighbouring pixels collapse onto the same
+ * value and the image turns blocky.
+ */
+public enum Precision {
+    FLOAT(24),
+    DOUBLE(53),
+    DOUBLE_DOUBLE(104), // 106 in theory, a couple of bits are lost to renormalisation
+    BIG_DECIMAL(Integer.MAX_VALUE);
+
+    // How far below the pixel spacing the rounding error has to stay. Errors
+    // grow with every iteration, so one ulp per pixel is nowhere near enough.
+    static final double SAFETY_FACTOR = 16384.0;
+
+    // Orbits are only followed while |z| <= 2, so coordinates stay below 4
+    static final double MAX_MAGNITUDE = 4.0;
+
+    final int mantissaBits;
+
+    Precision(int mantissaBits) {
+        this.mantissaBits = mantissaBits;
+    }
+
+    // Smallest pixel spacing this format still resolves
+    public double minSpacing() {
+        return MAX_MAGNITUDE * SAFETY_FACTOR * Math.scalb(1.0, -mantissaBits);
+    }
+
+    public static Precision forSpacing(double spacing) {
+        for (Precision p : values()) {
+            if (spacing >= p.minSpacing()) {
+                return p;
+            }
+        }
+        return BIG_DECIMAL;
+    }
+
+    /*
+     * Significant digits BigDecimal arithmetic needs at this pixel spacing.
+     * Never fewer than double-double carries: BigDecimal only gets picked
+     * once that is no longer enough, and a forced BIG_DECIMAL at a shallow
+     * zoom should still be the reference the other formats are checked
+     * against.
+     */
+    public static MathContext mathContext(double spacing) {
+        int digits = (int) Math.ceil(Math.log10(MAX_MAGNITUDE * SAFETY_FACTOR / spacing));
+        return new MathContext(Math.max(digits, MathContext.DECIMAL128.getPrecision()));
+    }
+}
@@ -0,0 +1,263 @@
+package fractal.spi;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Perturbation rendering of z' = z^2 + c for zooms past double precision.
+ *
+ * One orbit Z_n of a reference point C is computed in BigDecimal and kept as
+ * doubles. Every pixel c = C + dc then only follows its difference from it,
+ *
+ *   z_n = Z_n + d_n,   d_n+1 = 2 Z_n d_n + d_n^2 + dc
+ *
+ * which stays tiny and is therefore fine in double however deep the zoom,
+ * as long as the exponent range holds (spacings down to ~1e-300).
+ *
+ * The difference is only accurate while it is small against the reference.
+ * Once |z_n| < |d_n| the pixel has drifted off (a glitch) and is rebased:
+ * d becomes the full z_n and the pixel restarts against Z_0 = 0. The same
+ * happens when it outlives a reference that escaped early. That keeps one
+ * reference per frame correct for every pixel, without picking new ones.
+ *
+ * On top of that, approximate() fits the cubic series
+ *
+ *   d_n ~ A_n dc + B_n dc^2 + C_n dc^3
+ *
+ * to the early orbit, where all pixels of a deep frame still move as one.
+ * Pixels then start at iteration N from the series instead of at 0.
+ */
+public class ReferenceOrbit {
+
+    final int maxIter;
+
+    // Z_0 .. Z_length-1, ending early if the reference escapes
+    private final double[] orbitRe;
+    private final double[] orbitIm;
+    private final int length;
+
+    // Times a pixel was rebased, over all pixels so far
+    final LongAdder rebases = new LongAdder();
+
+    // Largest relative error of the series against an exactly iterated probe,
+    // and of the cubic term against the linear one. Near the boundary any
+    // error is amplified over the remaining iterations: 1e-6 already changed
+    // ~2% of the pixels of a seahorse valley frame, 1e-10 is at the noise floor.
+    static final double SERIES_TOLERANCE = 1e-10;
+
+    // Probes on the circle through the frame corners, where the series is worst
+    static final int SERIES_PROBES = 8;
+
+    /*
+     * Series coefficients at the skip iteration, scaled by the frame radius
+     * r so that with u = dc / r, d = a u + b u^2 + c u^3 and |u| <= 1. The
+     * unscaled ones overflow a double: C_n grows like the cube of the zoom.
+     */
+    private int skip;
+    private double radius;
+    private double a_r, a_i, b_r, b_i, c_r, c_i;
+
+    final LongAdder skipped = new LongAdder();
+
+    public ReferenceOrbit(BigDecimal c_r, BigDecimal c_i, int maxIter, MathContext mc) {
+        this.maxIter = maxIter;
+        orbitRe = new double[maxIter + 1];
+        orbitIm = new double[maxIter + 1];
+
+        BigDecimal z_r = BigDecimal.ZERO;
+        BigDecimal z_i = BigDecimal.ZERO;
+        BigDecimal two = BigDecimal.valueOf(2);
+
+        int n = 0;
+        while (true) {
+            orbitRe[n] = z_r.doubleValue();
+            orbitIm[n] = z_i.doubleValue();
+            n++;
+            if (n > maxIter || orbitRe[n - 1] * orbitRe[n - 1] + orbitIm[n - 1] * orbitIm[n - 1] > 4.0) {
+                break;
+            }
+
+            BigDecimal z_r2 = z_r.multiply(z_r, mc);
+            BigDecimal z_i2 = z_i.multiply(z_i, mc);
+            z_i = z_r.multiply(z_i, mc).multiply(two).add(c_i, mc);
+            z_r = z_r2.subtract(z_i2).add(c_r, mc);
+        }
+        length = n;
+    }
+
+    // Iterations the reference itself survives
+    public int length() {
+        return length;
+    }
+
+    /*
+     * Picks how many iterations pixels within radius of the reference can
+     * skip, and returns that count. The series is advanced one iteration at
+     * a time and stops being trusted as soon as either
+     *  - the cubic term is no longer negligible against the linear one, or
+     *  - it strays from a probe iterated exactly, or a probe would escape or
+     *    rebase, which the series can't represent.
+     * Must be called before the orbit is shared between render threads.
+     */
+    public int approximate(double radius) {
+        this.radius = radius;
+        skip = 0;
+
+        double[] probeU_r = new double[SERIES_PROBES];
+        double[] probeU_i = new double[SERIES_PROBES];
+        double[] probeD_r = new double[SERIES_PROBES];
+        double[] probeD_i = new double[SERIES_PROBES];
+        for (int p = 0; p < SERIES_PROBES; p++) {
+            probeU_r[p] = Math.cos(2 * Math.PI * p / SERIES_PROBES);
+            probeU_i[p] = Math.sin(2 * Math.PI * p / SERIES_PROBES);
+        }
+
+        double a_r = 0.0, a_i = 0.0, b_r = 0.0, b_i = 0.0, c_r = 0.0, c_i = 0.0;
+
+        for (int n = 0; n + 1 < length - 1; n++) {
+            double Z2_r = 2 * orbitRe[n];
+            double Z2_i = 2 * orbitIm[n];
+
+            // A' = 2ZA + 1, B' = 2ZB + A^2, C' = 2ZC + 2AB, in scaled form
+            double na_r = Z2_r * a_r - Z2_i * a_i + radius;
+            double na_i = Z2_r * a_i + Z2_i * a_r;
+            double nb_r = Z2_r * b_r - Z2_i * b_i + (a_r * a_r - a_i * a_i);
+            double nb_i = Z2_r * b_i + Z2_i * b_r + 2 * a_r * a_i;
+            double nc_r = Z2_r * c_r - Z2_i * c_i + 2 * (a_r * b_r - a_i * b_i);
+            double nc_i = Z2_r * c_i + Z2_i * c_r + 2 * (a_r * b_i + a_i * b_r);
+
+            double linear = na_r * na_r + na_i * na_i;
+            double cubic = nc_r * nc_r + nc_i * nc_i;
+            if (!(cubic <= SERIES_TOLERANCE * SERIES_TOLERANCE * linear)) {
+                break; // also catches overflow to infinity or NaN
+            }
+
+            boolean valid = true;
+            for (int p = 0; p < SERIES_PROBES && valid; p++) {
+                double u_r = probeU_r[p];
+                double u_i = probeU_i[p];
+                double d_r = probeD_r[p];
+                double d_i = probeD_i[p];
+
+                double t_r = Z2_r + d_r;
+                double t_i = Z2_i + d_i;
+                double d_r_tmp = d_r;
+                d_r = t_r * d_r - t_i * d_i + radius * u_r;
+                d_i = t_r * d_i + t_i * d_r_tmp + radius * u_i;
+                probeD_r[p] = d_r;
+                probeD_i[p] = d_i;
+
+                double z_r = orbitRe[n + 1] + d_r;
+                double z_i = orbitIm[n + 1] + d_i;
+                double z2 = z_r * z_r + z_i * z_i;
+                double d2 = d_r * d_r + d_i * d_i;
+                if (z2 > 4.0 || z2 < d2) {
+                    valid = false;
+                    break;
+                }
+
+                // Horner: ((c u + b) u + a) u
+                double s_r = nc_r * u_r - nc_i * u_i + nb_r;
+                double s_i = nc_r * u_i + nc_i * u_r + nb_i;
+                double s_tmp = s_r;
+                s_r = s_r * u_r - s_i * u_i + na_r;
+                s_i = s_tmp * u_i + s_i * u_r + na_i;
+                s_tmp = s_r;
+                s_r = s_r * u_r - s_i * u_i;
+                s_i = s_tmp * u_i + s_i * u_r;
+
+                double e_r = s_r - d_r;
+                double e_i = s_i - d_i;
+                valid = e_r * e_r + e_i * e_i <= SERIES_TOLERANCE * SERIES_TOLERANCE * d2;
+            }
+            if (!valid) {
+                break;
+            }
+
+            a_r = na_r;
+            a_i = na_i;
+            b_r = nb_r;
+            b_i = nb_i;
+            c_r = nc_r;
+            c_i = nc_i;
+            skip = n + 1;
+        }
+
+        this.a_r = a_r;
+        this.a_i = a_i;
+        this.b_r = b_r;
+        this.b_i = b_i;
+        this.c_r = c_r;
+        this.c_i = c_i;
+        return skip;
+    }
+
+    public int skip() {
+        return skip;
+    }
+
+    /*
+     * Iteration count of the point C + dc, counted the same way as
+     * MandelbrotKernel: the first n with |z_n| > 2, or maxIter.
+     */
+    public int iterate(double dc_r, double dc_i) {
+        double d_r = 0.0;
+        double d_i = 0.0;
+        int n = 0;
+        int rebased = 0;
+
+        if (skip > 0) {
+            // d_skip from the series, ((c u + b) u + a) u with u = dc / r
+            double u_r = dc_r / radius;
+            double u_i = dc_i / radius;
+            double s_r = c_r * u_r - c_i * u_i + b_r;
+            double s_i = c_r * u_i + c_i * u_r + b_i;
+            double s_tmp = s_r;
+            s_r = s_r * u_r - s_i * u_i + a_r;
+            s_i = s_tmp * u_i + s_i * u_r + a_i;
+            d_r = s_r * u_r - s_i * u_i;
+            d_i = s_r * u_i + s_i * u_r;
+            n = skip;
+            skipped.add(skip);
+        }
+
+        int iter = n + 1;
+        for (; iter <= maxIter; iter++) {
+            double Z_r = orbitRe[n];
+            double Z_i = orbitIm[n];
+
+            // d' = (2Z + d) d + dc
+            double t_r = 2 * Z_r + d_r;
+            double t_i = 2 * Z_i + d_i;
+            double d_r_tmp = d_r;
+            d_r = t_r * d_r - t_i * d_i + dc_r;
+            d_i = t_r * d_i + t_i * d_r_tmp + dc_i;
+            n++;
+
+            double z_r = orbitRe[n] + d_r;
+            double z_i = orbitIm[n] + d_i;
+            double z2 = z_r * z_r + z_i * z_i;
+            if (z2 > 4.0) {
+                break;
+            }
+
+            if (z2 < d_r * d_r + d_i * d_i || n == length - 1) {
+                d_r = z_r;
+                d_i = z_i;
+                n = 0;
+                rebased++;
+            }
+        }
+
+        if (rebased != 0) {
+            rebases.add(rebased);
+        }
+        return Math.min(iter, maxIter);
+    }
+
+    public String stats() {
+        return "reference length " + length + ", iterations skipped " + skipped.sum() + " (" + skip
+                + " per pixel), rebases " + rebases.sum();
+    }
+}
@@ -0,0 +1,357 @@
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+import fractal.spi.Palette;
+import fractal.spi.Precision;
+
+/*
+ * The workloads behind the JMH benchmarks in jmh/bench: the iteration
+ * kernels, the palettes and whole-frame renders.
+ *
+ *   gradle jmh
+ *   gradle jmh -Pjmh='FrameBenchmark -p name=frame.mandelbrot[zoom=1e+04;maxIter=1000]'
+ *
+ * -Pjmh takes JMH's own arguments, so -rf csv or -rf json write the results
+ * out. Settings in a case name are split by ';', as -p splits on commas.
+ * The cases live here, in the default package with the rest of the
+ * application, because JMH can't generate code for a benchmark there and a
+ * named package can't import from it; the benchmark classes look a case up
+ * by name through create(). Each case is set up on its own when its fork
+ * starts, so nothing one case sets up carries over to the next.
+ *
+ * Run this class to list the case names.
+ */
+public class BenchmarkCases {
+
+    // Grid used by the kernel benchmarks, spanning the default 600x600 view
+    static final int GRID = 256;
+
+    // Times the 200-entry palette is swept per call
+    static final int PALETTE_PASSES = 1000;
+
+    // Seahorse valley; stays on the boundary at every zoom level
+    static final double ZOOM_CENTER_X = -0.743643887037151;
+    static final double ZOOM_CENTER_Y = -0.131825904205330;
+
+    static final double[] ZOOM_LEVELS = { 100.0, 1e4, 1e8 };
+    static final int[] MAX_ITERS = { 200, 1000 };
+    static final double[] MULTIBROT_DEGREES = { 2, 3, 5, 8, 2.5 };
+
+    // Deep zooms for the perturbation renderer, around the Misiurewicz point
+    // c = i, which has boundary detail at every scale
+    static final double[] DEEP_ZOOM_LEVELS = { 1e20, 1e50, 1e100 };
+
+    // Edge of the frames the precisions are compared on; BigDecimal gets a
+    // much smaller one, being two orders of magnitude slower
+    static final int PRECISION_FRAME = 256;
+    static final int BIG_DECIMAL_FRAME = 32;
+
+    // Distance between the two views the pan benchmark alternates between
+    static final int PAN_PIXELS = 100;
+
+    // Case name to the code that sets the case up and returns its body
+    private static final Map<String, Supplier<LongSupplier>> CASES = new LinkedHashMap<>();
+
+    static {
+        addCases();
+    }
+
+    interface PointFunction {
+        int apply(double x, double y);
+    }
+
+    // The body of the named case, set up and ready to be timed
+    public static LongSupplier create(String name) {
+        Supplier<LongSupplier> setup = CASES.get(name);
+        if (setup == null) {
+            throw new IllegalArgumentException("No benchmark case " + name);
+        }
+        return setup.get();
+    }
+
+    private static void addCases() {
+        kernel("mandelbrot.iterate", () -> new MandelbrotKernel(200)::iterate);
+        kernel("mandelbrot.iterate[plain]", () -> {
+            MandelbrotKernel plain = new MandelbrotKernel(200);
+            plain.setInteriorAcceleration(false);
+            return plain::iterate;
+        });
+        rows("mandelbrot.iterateRow", () -> new MandelbrotKernel(200));
+        rows("mandelbrot.iterateRow[simd]", () -> simd(new MandelbrotKernel(200)));
+
+        kernel("julia.iterate", () -> new JuliaKernel(JuliaSet.DEFAULT_C_R, JuliaSet.DEFAULT_C_I, 200)::iterate);
+        rows("julia.iterateRow", () -> new JuliaKernel(JuliaSet.DEFAULT_C_R, JuliaSet.DEFAULT_C_I, 200));
+        rows("julia.iterateRow[simd]", () -> simd(new JuliaKernel(JuliaSet.DEFAULT_C_R, JuliaSet.DEFAULT_C_I, 200)));
+
+        for (double degree : MULTIBROT_DEGREES) {
+            kernel("multibrot.iterate[degree=" + degree + "]", () -> new MultibrotKernel(degree, 200)::iterate);
+            rows("multibrot.iterateRow[degree=" + degree + ";simd]", () -> simd(new MultibrotKernel(degree, 200)));
+        }
+
+        kernel("newton.iterate", () -> new NewtonKernel(NewtonKernel.rootsOfUnity(3), 200)::iterate);
+
+        for (Palette.Scheme scheme : Palette.Scheme.values()) {
+            CASES.put("palette.color[" + scheme + "]", () -> {
+                Palette palette = Palette.of(scheme, 200);
+                return () -> {
+                    long sum = 0;
+                    for (int pass = 0; pass < PALETTE_PASSES; pass++) {
+                        for (int i = 0; i < 200; i++) {
+                            sum += palette.color(i);
+                        }
+                    }
+                    return sum;
+                };
+            });
+            CASES.put("palette.build[" + scheme + "]", () -> () -> {
+                long sum = 0;
+                for (int pass = 0; pass < PALETTE_PASSES; pass++) {
+                    for (int i = 0; i < 200; i++) {
+                        sum += scheme.color(i, 200);
+                    }
+                }
+                return sum;
+            });
+        }
+
+        for (int maxIter : MAX_ITERS) {
+            for (double zoom : ZOOM_LEVELS) {
+                String name = String.format(Locale.ROOT, "frame.mandelbrot[zoom=%.0e;maxIter=%d]", zoom, maxIter);
+                frame(name, () -> mandelbrot(maxIter), zoom, engine -> {});
+                frame(name.replace("frame.", "frame.marianiSilver."), () -> mandelbrot(maxIter), zoom,
+                        engine -> engine.setMarianiSilver(true));
+                frame(name.replace("frame.", "frame.progressive."), () -> mandelbrot(maxIter), zoom,
+                        engine -> engine.setProgressive(true));
+                frame(name.replace("frame.", "frame.simd."), () -> new FractalRenderer(
+                        simd(new MandelbrotKernel(maxIter)), Palette.of(Palette.Scheme.COSINE, maxIter)), zoom,
+                        engine -> {});
+            }
+        }
+
+        precisions();
+
+        for (double zoom : DEEP_ZOOM_LEVELS) {
+            String name = String.format(Locale.ROOT, "frame.perturbation.mandelbrot[zoom=%.0e;maxIter=2000]", zoom);
+            CASES.put(name, () -> {
+                FractalRenderer engine = mandelbrot(2000);
+                FrameBuffer frame = new FrameBuffer(FractalExplorer.WIDTH, FractalExplorer.HEIGHT);
+                BigDecimal half = new BigDecimal(frame.width / 2.0 / zoom);
+                Viewport view = new Viewport(half.negate(), half.subtract(BigDecimal.ONE), zoom);
+                return () -> {
+                    engine.render(view, frame);
+                    return frame.pixels[frame.pixels.length / 2];
+                };
+            });
+        }
+
+        pan();
+        recolor();
+        cached();
+        adaptive();
+        supersampled();
+        providers();
+        formulas();
+    }
+
+    private static FractalRenderer mandelbrot(int maxIter) {
+        return new FractalRenderer(new MandelbrotKernel(maxIter), Palette.of(Palette.Scheme.COSINE, maxIter));
+    }
+
+    // The SIMD version of kernel; fails the case rather than quietly timing the scalar one
+    private static FractalKernel simd(FractalKernel kernel) {
+        FractalKernel vectorized = Fractals.vectorized(kernel);
+        if (!vectorized.getClass().getName().startsWith("VectorKernels")) {
+            throw new IllegalStateException("No SIMD kernel for " + kernel.getClass().getSimpleName()
+                    + "; needs simd/ on the class path and --add-modules jdk.incubator.vector");
+        }
+        return vectorized;
+    }
+
+    // A default-size frame of the seahorse valley at zoom
+    private static void frame(String name, Supplier<FractalRenderer> engines, double zoom,
+            Consumer<FractalRenderer> setting) {
+        CASES.put(name, () -> {
+            FractalRenderer engine = engines.get();
+            setting.accept(engine);
+            FrameBuffer frame = new FrameBuffer(FractalExplorer.WIDTH, FractalExplorer.HEIGHT);
+            Viewport view = centeredOn(ZOOM_CENTER_X, ZOOM_CENTER_Y, zoom, frame.width, frame.height);
+            return () -> {
+                engine.render(view, frame);
+                return frame.pixels[frame.pixels.length / 2];
+            };
+        });
+    }
+
+    // Every fractal FractalKernelProvider knows, built-in or plugged in, at the default view
+    private static void providers() {
+        for (FractalKernelProvider provider : Fractals.all()) {
+            CASES.put("frame.provider[" + provider.name() + "]", () -> {
+                FractalKernel kernel = provider.create(200);
+                return defaultView(new FractalRenderer(kernel, provider.palette(kernel, null, 200)));
+            });
+        }
+    }
+
+    // Compiled formulas, against frame.provider[...] with the hand-written kernels
+    private static void formulas() {
+        String[][] formulas = {
+            {"burning-ship", "(|re z| + i|im z|)^2 + c"},
+            {"tricorn", "conj(z)^2 + c"},
+        };
+        for (String[] formula : formulas) {
+            CASES.put("frame.formula[" + formula[0] + "]", () -> defaultView(new FractalRenderer(
+                    FormulaKernel.create(formula[1], 200), Palette.of(Palette.Scheme.COSINE, 200))));
+        }
+    }
+
+    private static LongSupplier defaultView(FractalRenderer engine) {
+        FrameBuffer frame = new FrameBuffer(FractalExplorer.WIDTH, FractalExplorer.HEIGHT);
+        Viewport view = new Viewport(FractalExplorer.DEFAULT_TOP_LEFT_X, FractalExplorer.DEFAULT_TOP_LEFT_Y,
+                FractalExplorer.DEFAULT_ZOOM);
+        return () -> {
+            engine.render(view, frame);
+            return frame.pixels[frame.pixels.length / 2];
+        };
+    }
+
+    // 4 x 4 samples on the edges, against frame.mandelbrot at the same view
+    private static void supersampled() {
+        frame("frame.supersampled.mandelbrot[zoom=1e+04;maxIter=1000;factor=4]", () -> mandelbrot(1000), 1e4,
+                engine -> engine.setSupersampling(4));
+    }
+
+    // Adaptive limit from a base of 200, against frame.mandelbrot at a fixed
+    // one. Every render starts from a fresh budget, so each is the first
+    // visit to its view rather than one with the limit already learned.
+    private static void adaptive() {
+        for (double zoom : ZOOM_LEVELS) {
+            String name = String.format(Locale.ROOT, "frame.adaptive.mandelbrot[zoom=%.0e]", zoom);
+            CASES.put(name, () -> {
+                FractalRenderer engine = mandelbrot(200);
+                FrameBuffer frame = new FrameBuffer(FractalExplorer.WIDTH, FractalExplorer.HEIGHT);
+                Viewport view = centeredOn(ZOOM_CENTER_X, ZOOM_CENTER_Y, zoom, frame.width, frame.height);
+                return () -> {
+                    engine.setAdaptiveIterations(true);
+                    engine.render(view, frame);
+                    return frame.maxIter;
+                };
+            });
+        }
+    }
+
+    // Revisiting a view whose tiles are all in the tile cache
+    private static void cached() {
+        frame("frame.cached.mandelbrot[zoom=1e+04;maxIter=1000]", () -> mandelbrot(1000), 1e4,
+                engine -> engine.setTileCache(new TileCache(TileCache.DEFAULT_MAX_BYTES)));
+    }
+
+    // Palette change on a rendered frame, against frame.mandelbrot at the same view
+    private static void recolor() {
+        CASES.put("frame.recolor[maxIter=1000]", () -> {
+            FractalRenderer engine = mandelbrot(1000);
+            FrameBuffer frame = new FrameBuffer(FractalExplorer.WIDTH, FractalExplorer.HEIGHT);
+            engine.render(centeredOn(ZOOM_CENTER_X, ZOOM_CENTER_Y, 1e4, frame.width, frame.height), frame);
+            Palette palette = engine.getPalette();
+            int[] offset = { 0 };
+            return () -> {
+                engine.setPalette(palette.shifted(++offset[0]));
+                engine.recolor(frame, null).await();
+                return frame.pixels[frame.pixels.length / 2];
+            };
+        });
+    }
+
+    // Pans back and forth by PAN_PIXELS, each frame reusing the previous one
+    private static void pan() {
+        CASES.put("frame.pan.mandelbrot[zoom=1e+04;maxIter=1000]", () -> {
+            FractalRenderer engine = mandelbrot(1000);
+            FrameBuffer frame = new FrameBuffer(FractalExplorer.WIDTH, FractalExplorer.HEIGHT);
+            double zoom = 1e4;
+            Viewport left = centeredOn(ZOOM_CENTER_X, ZOOM_CENTER_Y, zoom, frame.width, frame.height);
+            Viewport right = new Viewport(left.originX.add(new BigDecimal(PAN_PIXELS / zoom)), left.originY, zoom);
+            TileRenderer.TileListener ignored = (x, y, w, h) -> {};
+            Viewport[] next = { left };
+            return () -> {
+                next[0] = next[0] == left ? right : left;
+                engine.submit(next[0], frame, ignored).await();
+                return frame.pixels[frame.pixels.length / 2];
+            };
+        });
+    }
+
+    // Every precision on the same view, so the cost of each tier can be
+    // compared; PrecisionBenchmark reports them per pixel
+    private static void precisions() {
+        for (Precision precision : Precision.values()) {
+            int size = precision == Precision.BIG_DECIMAL ? BIG_DECIMAL_FRAME : PRECISION_FRAME;
+            boolean vectorizable = precision == Precision.FLOAT || precision == Precision.DOUBLE;
+            for (boolean simd : vectorizable ? new boolean[] { false, true } : new boolean[] { false }) {
+                CASES.put("frame.precision[" + precision + (simd ? ";simd]" : "]"), () -> {
+                    FractalKernel kernel = new MandelbrotKernel(200);
+                    FractalRenderer engine = new FractalRenderer(simd ? simd(kernel) : kernel,
+                            Palette.of(Palette.Scheme.COSINE, 200));
+                    engine.setPrecision(precision);
+                    FrameBuffer frame = new FrameBuffer(size, size);
+                    Viewport view = centeredOn(ZOOM_CENTER_X, ZOOM_CENTER_Y, 1e4, size, size);
+                    return () -> {
+                        engine.render(view, frame);
+                        return frame.pixels[frame.pixels.length / 2];
+                    };
+                });
+            }
+        }
+    }
+
+    private static void kernel(String name, Supplier<PointFunction> functions) {
+        CASES.put(name, () -> {
+            PointFunction function = functions.get();
+            return () -> {
+                long sum = 0;
+                for (int y = 0; y < GRID; y++) {
+                    double yPos = y * 6.0 / GRID - 3.0;
+                    for (int x = 0; x < GRID; x++) {
+                        sum += function.apply(x * 6.0 / GRID - 3.0, yPos);
+                    }
+                }
+                return sum;
+            };
+        });
+    }
+
+    // Whole grid through the row API, which is where the SIMD kernels kick in
+    private static void rows(String name, Supplier<FractalKernel> kernels) {
+        CASES.put(name, () -> {
+            FractalKernel kernel = kernels.get();
+            double[] xs = new double[GRID];
+            for (int x = 0; x < GRID; x++) {
+                xs[x] = x * 6.0 / GRID - 3.0;
+            }
+            int[] out = new int[GRID];
+            return () -> {
+                long sum = 0;
+                for (int y = 0; y < GRID; y++) {
+                    kernel.iterateRow(xs, y * 6.0 / GRID - 3.0, out, 0, GRID);
+                    sum += out[y];
+                }
+                return sum;
+            };
+        });
+    }
+
+    static Viewport centeredOn(double x, double y, double zoom, int width, int height) {
+        return new Viewport(x - width / 2.0 / zoom, height / 2.0 / zoom - y, zoom);
+    }
+
+    public static void main(String[] args) {
+        for (String name : CASES.keySet()) {
+            System.out.println(name);
+        }
+    }
+}
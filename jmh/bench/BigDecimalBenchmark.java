@@ -0,0 +1,25 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/*
+ * PrecisionBenchmark for BigDecimal, on a smaller frame.
+ */
+@OperationsPerInvocation(32 * 32) // BenchmarkCases.BIG_DECIMAL_FRAME squared
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BigDecimalBenchmark extends CaseBenchmark {
+
+    @Param({
+        "frame.precision[BIG_DECIMAL]",
+    })
+    public String name;
+
+    @Override
+    protected String name() {
+        return name;
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Times one case of BenchmarkCases, picked by name. That class is in the
+ * default package with the application, which can't be imported from here,
+ * so the case is looked up reflectively once per fork and only the call to
+ * its body is timed.
+ *
+ * The subclasses list the names and the unit they are reported in; each
+ * gets a fresh JVM, with the Vector API module for the SIMD cases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+public abstract class CaseBenchmark {
+
+    private LongSupplier body;
+
+    // The @Param naming the case
+    protected abstract String name();
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        body = (LongSupplier) Class.forName("BenchmarkCases").getMethod("create", String.class).invoke(null, name());
+    }
+
+    @Benchmark
+    public long run() {
+        return body.getAsLong();
+    }
+}
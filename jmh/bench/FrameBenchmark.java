@@ -0,0 +1,65 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/*
+ * Whole frames, per frame. provider[...] cases for fractals plugged in
+ * through ServiceLoader can be added with -p name=...
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameBenchmark extends CaseBenchmark {
+
+    @Param({
+        "frame.mandelbrot[zoom=1e+02;maxIter=200]",
+        "frame.marianiSilver.mandelbrot[zoom=1e+02;maxIter=200]",
+        "frame.progressive.mandelbrot[zoom=1e+02;maxIter=200]",
+        "frame.simd.mandelbrot[zoom=1e+02;maxIter=200]",
+        "frame.mandelbrot[zoom=1e+04;maxIter=200]",
+        "frame.marianiSilver.mandelbrot[zoom=1e+04;maxIter=200]",
+        "frame.progressive.mandelbrot[zoom=1e+04;maxIter=200]",
+        "frame.simd.mandelbrot[zoom=1e+04;maxIter=200]",
+        "frame.mandelbrot[zoom=1e+08;maxIter=200]",
+        "frame.marianiSilver.mandelbrot[zoom=1e+08;maxIter=200]",
+        "frame.progressive.mandelbrot[zoom=1e+08;maxIter=200]",
+        "frame.simd.mandelbrot[zoom=1e+08;maxIter=200]",
+        "frame.mandelbrot[zoom=1e+02;maxIter=1000]",
+        "frame.marianiSilver.mandelbrot[zoom=1e+02;maxIter=1000]",
+        "frame.progressive.mandelbrot[zoom=1e+02;maxIter=1000]",
+        "frame.simd.mandelbrot[zoom=1e+02;maxIter=1000]",
+        "frame.mandelbrot[zoom=1e+04;maxIter=1000]",
+        "frame.marianiSilver.mandelbrot[zoom=1e+04;maxIter=1000]",
+        "frame.progressive.mandelbrot[zoom=1e+04;maxIter=1000]",
+        "frame.simd.mandelbrot[zoom=1e+04;maxIter=1000]",
+        "frame.mandelbrot[zoom=1e+08;maxIter=1000]",
+        "frame.marianiSilver.mandelbrot[zoom=1e+08;maxIter=1000]",
+        "frame.progressive.mandelbrot[zoom=1e+08;maxIter=1000]",
+        "frame.simd.mandelbrot[zoom=1e+08;maxIter=1000]",
+        "frame.perturbation.mandelbrot[zoom=1e+20;maxIter=2000]",
+        "frame.perturbation.mandelbrot[zoom=1e+50;maxIter=2000]",
+        "frame.perturbation.mandelbrot[zoom=1e+100;maxIter=2000]",
+        "frame.pan.mandelbrot[zoom=1e+04;maxIter=1000]",
+        "frame.recolor[maxIter=1000]",
+        "frame.cached.mandelbrot[zoom=1e+04;maxIter=1000]",
+        "frame.adaptive.mandelbrot[zoom=1e+02]",
+        "frame.adaptive.mandelbrot[zoom=1e+04]",
+        "frame.adaptive.mandelbrot[zoom=1e+08]",
+        "frame.supersampled.mandelbrot[zoom=1e+04;maxIter=1000;factor=4]",
+        "frame.provider[mandelbrot]",
+        "frame.provider[julia]",
+        "frame.provider[multibrot]",
+        "frame.provider[newton]",
+        "frame.provider[burning-ship]",
+        "frame.provider[tricorn]",
+        "frame.formula[burning-ship]",
+        "frame.formula[tricorn]",
+    })
+    public String name;
+
+    @Override
+    protected String name() {
+        return name;
+    }
+}
@@ -0,0 +1,43 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/*
+ * The iteration kernels over a GRID x GRID grid, point by point and row by
+ * row, per pixel.
+ */
+@OperationsPerInvocation(256 * 256) // BenchmarkCases.GRID squared
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KernelBenchmark extends CaseBenchmark {
+
+    @Param({
+        "mandelbrot.iterate",
+        "mandelbrot.iterate[plain]",
+        "mandelbrot.iterateRow",
+        "mandelbrot.iterateRow[simd]",
+        "julia.iterate",
+        "julia.iterateRow",
+        "julia.iterateRow[simd]",
+        "multibrot.iterate[degree=2.0]",
+        "multibrot.iterateRow[degree=2.0;simd]",
+        "multibrot.iterate[degree=3.0]",
+        "multibrot.iterateRow[degree=3.0;simd]",
+        "multibrot.iterate[degree=5.0]",
+        "multibrot.iterateRow[degree=5.0;simd]",
+        "multibrot.iterate[degree=8.0]",
+        "multibrot.iterateRow[degree=8.0;simd]",
+        "multibrot.iterate[degree=2.5]",
+        "multibrot.iterateRow[degree=2.5;simd]",
+        "newton.iterate",
+    })
+    public String name;
+
+    @Override
+    protected String name() {
+        return name;
+    }
+}
@@ -0,0 +1,30 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/*
+ * Palette lookups, and building the colors from scratch, per pixel.
+ */
+@OperationsPerInvocation(200 * 1000) // 200 colors, BenchmarkCases.PALETTE_PASSES times
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PaletteBenchmark extends CaseBenchmark {
+
+    @Param({
+        "palette.color[COSINE]",
+        "palette.build[COSINE]",
+        "palette.color[GRAYSCALE]",
+        "palette.build[GRAYSCALE]",
+        "palette.color[MODULAR]",
+        "palette.build[MODULAR]",
+    })
+    public String name;
+
+    @Override
+    protected String name() {
+        return name;
+    }
+}
@@ -0,0 +1,30 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/*
+ * A frame in each precision, per pixel; BigDecimalBenchmark has the one
+ * too slow for a frame this size.
+ */
+@OperationsPerInvocation(256 * 256) // BenchmarkCases.PRECISION_FRAME squared
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PrecisionBenchmark extends CaseBenchmark {
+
+    @Param({
+        "frame.precision[FLOAT]",
+        "frame.precision[FLOAT;simd]",
+        "frame.precision[DOUBLE]",
+        "frame.precision[DOUBLE;simd]",
+        "frame.precision[DOUBLE_DOUBLE]",
+    })
+    public String name;
+
+    @Override
+    protected String name() {
+        return name;
+    }
+}
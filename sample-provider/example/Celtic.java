@@ -0,0 +1,66 @@
+package example;
+
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+
+/*
+ * Celtic Mandelbrot, z' = |re z^2| + i im z^2 + c from z = 0: a fractal
+ * from outside the tree, shipped as a jar of its own. It is built against
+ * fractal.spi alone and listed in
+ * META-INF/services/fractal.spi.FractalKernelProvider next to it:
+ *
+ *   gradle sampleProviderJar
+ *   java -cp out:build/libs/sample-provider.jar RenderCli --type celtic
+ */
+public class Celtic implements FractalKernelProvider {
+
+    @Override
+    public String name() {
+        return "celtic";
+    }
+
+    @Override
+    public FractalKernel create(int maxIter) {
+        return new Kernel(maxIter);
+    }
+
+    static final class Kernel implements FractalKernel {
+
+        final int maxIter;
+
+        Kernel(int maxIter) {
+            this.maxIter = maxIter;
+        }
+
+        @Override
+        public int iterate(double c_r, double c_i) {
+            double z_r = 0;
+            double z_i = 0;
+            int iterCount = 0;
+
+            while (z_r * z_r + z_i * z_i <= 4.0) {
+                double square_r = z_r * z_r - z_i * z_i;
+
+                z_i = 2 * z_r * z_i + c_i;
+                z_r = Math.abs(square_r) + c_r;
+
+                if (iterCount >= maxIter) {
+                    return maxIter;
+                }
+                iterCount++;
+            }
+
+            return iterCount;
+        }
+
+        @Override
+        public FractalKernel withMaxIter(int maxIter) {
+            return new Kernel(maxIter);
+        }
+
+        @Override
+        public String cacheKey() {
+            return "celtic," + maxIter;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import fractal.spi.DoubleDouble;
+import fractal.spi.FractalKernel;
+import fractal.spi.Precision;
+import fractal.spi.ReferenceOrbit;
+
+/*
+ * SIMD versions of the escape-time kernels, iterating a full vector of pixels
+ * at once with a mask for the lanes that have not escaped yet. They give the
+ * same counts as the scalar kernels, which they use for single points, for
+ * the tail of a row that doesn't fill a vector and for the deep zoom formats.
+ * Float rows get twice the lanes of double rows.
+ *
+ * Uses the incubating Vector API, so this file is kept in a source root of
+ * its own that only a SIMD build compiles, after the rest of the tree:
+ *   javac -d out *.java fractal/spi/*.java
+ *   javac --add-modules jdk.incubator.vector -cp out -d out simd/*.java
+ *   java --add-modules jdk.incubator.vector -cp out ...
+ * gradle build does the same with its simd source set.
+ * Always go through Fractals.vectorized(), which falls back to the scalar
+ * kernel when this class or the module isn't there.
+ */
+public class VectorKernels {
+
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // Lanes are only checked for all having escaped every this many
+    // iterations; the reduction costs more than a few wasted iterations.
+    static final int ESCAPE_CHECK_INTERVAL = 8;
+
+    private static final DoubleVector ZERO = DoubleVector.zero(SPECIES);
+    private static final DoubleVector ONE = DoubleVector.broadcast(SPECIES, 1.0);
+
+    // Ints with the lane count of SPECIES, the counts of escape() as written out
+    private static final VectorSpecies<Integer> COUNT_SPECIES = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(SPECIES.length() * Integer.SIZE));
+
+    static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private static final FloatVector FLOAT_ZERO = FloatVector.zero(FLOAT_SPECIES);
+    private static final FloatVector FLOAT_ONE = FloatVector.broadcast(FLOAT_SPECIES, 1.0f);
+
+    // Called reflectively by Fractals.vectorized()
+    public static FractalKernel of(FractalKernel kernel) {
+        if (kernel instanceof MandelbrotKernel) {
+            return new Mandelbrot((MandelbrotKernel) kernel);
+        }
+        if (kernel instanceof JuliaKernel) {
+            return new Julia((JuliaKernel) kernel);
+        }
+        if (kernel instanceof MultibrotKernel && ((MultibrotKernel) kernel).isIntegerDegree()) {
+            return new Multibrot((MultibrotKernel) kernel);
+        }
+        return kernel;
+    }
+
+    /*
+     * Runs z' = z^degree + c on every lane still in active and writes the
+     * iteration counts, capped at maxIter like the scalar loop, to out.
+     * Lanes that escaped keep being iterated but are masked out of the count,
+     * and an escaped lane never becomes active again.
+     *
+     * There is no periodicity check: on JDK 17 the extra mask work per
+     * iteration cost more than the orbits it cut short.
+     *
+     * Counting goes through blend rather than a masked add, which C2 on
+     * JDK 17 does not intrinsify and which made the loop box every vector.
+     */
+    static void escape(DoubleVector z_r, DoubleVector z_i, DoubleVector c_r, DoubleVector c_i,
+            VectorMask<Double> active, int degree, int maxIter, int[] out, int offset) {
+        DoubleVector counts = ZERO;
+
+        for (int n = 0; n <= maxIter; n++) {
+            active = active.and(z_r.mul(z_r).add(z_i.mul(z_i)).compare(VectorOperators.LE, 4.0));
+            if (n % ESCAPE_CHECK_INTERVAL == 0 && !active.anyTrue()) {
+                break;
+            }
+            counts = counts.add(ZERO.blend(ONE, active));
+
+            if (degree == 2) {
+                DoubleVector z_r_tmp = z_r;
+                z_r = z_r.mul(z_r).sub(z_i.mul(z_i)).add(c_r);
+                z_i = z_r_tmp.mul(2.0).mul(z_i).add(c_i);
+            } else {
+                // Same binary exponentiation as MultibrotKernel
+                DoubleVector p_r = ONE;
+                DoubleVector p_i = ZERO;
+                DoubleVector b_r = z_r;
+                DoubleVector b_i = z_i;
+                for (int e = degree; e != 0; ) {
+                    if ((e & 1) != 0) {
+                        DoubleVector t = p_r.mul(b_r).sub(p_i.mul(b_i));
+                        p_i = p_r.mul(b_i).add(p_i.mul(b_r));
+                        p_r = t;
+                    }
+                    e >>>= 1;
+                    if (e != 0) {
+                        DoubleVector t = b_r.mul(b_r).sub(b_i.mul(b_i));
+                        b_i = b_r.mul(2.0).mul(b_i);
+                        b_r = t;
+                    }
+                }
+                z_r = p_r.add(c_r);
+                z_i = p_i.add(c_i);
+            }
+        }
+
+        counts.min(maxIter).convertShape(VectorOperators.D2I, COUNT_SPECIES, 0).reinterpretAsInts()
+                .intoArray(out, offset);
+    }
+
+    // escape() in float, for the Precision.FLOAT tier
+    static void escapeFloat(FloatVector z_r, FloatVector z_i, FloatVector c_r, FloatVector c_i,
+            VectorMask<Float> active, int degree, int maxIter, int[] out, int offset) {
+        FloatVector counts = FLOAT_ZERO;
+
+        for (int n = 0; n <= maxIter; n++) {
+            active = active.and(z_r.mul(z_r).add(z_i.mul(z_i)).compare(VectorOperators.LE, 4.0f));
+            if (n % ESCAPE_CHECK_INTERVAL == 0 && !active.anyTrue()) {
+                break;
+            }
+            counts = counts.add(FLOAT_ZERO.blend(FLOAT_ONE, active));
+
+            if (degree == 2) {
+                FloatVector z_r_tmp = z_r;
+                z_r = z_r.mul(z_r).sub(z_i.mul(z_i)).add(c_r);
+                z_i = z_r_tmp.mul(2.0f).mul(z_i).add(c_i);
+            } else {
+                FloatVector p_r = FLOAT_ONE;
+                FloatVector p_i = FLOAT_ZERO;
+                FloatVector b_r = z_r;
+                FloatVector b_i = z_i;
+                for (int e = degree; e != 0; ) {
+                    if ((e & 1) != 0) {
+                        FloatVector t = p_r.mul(b_r).sub(p_i.mul(b_i));
+                        p_i = p_r.mul(b_i).add(p_i.mul(b_r));
+                        p_r = t;
+                    }
+                    e >>>= 1;
+                    if (e != 0) {
+                        FloatVector t = b_r.mul(b_r).sub(b_i.mul(b_i));
+                        b_i = b_r.mul(2.0f).mul(b_i);
+                        b_r = t;
+                    }
+                }
+                z_r = p_r.add(c_r);
+                z_i = p_i.add(c_i);
+            }
+        }
+
+        // A float holds every count up to 2^24 exactly
+        counts.min(maxIter).convert(VectorOperators.F2I, 0).reinterpretAsInts().intoArray(out, offset);
+    }
+
+    // Passes everything the SIMD versions don't cover on to the scalar kernel
+    abstract static class Wrapper implements FractalKernel {
+        private final FractalKernel scalar;
+
+        Wrapper(FractalKernel scalar) {
+            this.scalar = scalar;
+        }
+
+        @Override
+        public boolean supports(Precision precision) {
+            return scalar.supports(precision);
+        }
+
+        @Override
+        public int iterate(double x, double y) {
+            return scalar.iterate(x, y);
+        }
+
+        @Override
+        public int iterate(float x, float y) {
+            return scalar.iterate(x, y);
+        }
+
+        @Override
+        public int iterate(DoubleDouble x, DoubleDouble y) {
+            return scalar.iterate(x, y);
+        }
+
+        @Override
+        public int iterate(BigDecimal x, BigDecimal y, MathContext mc) {
+            return scalar.iterate(x, y, mc);
+        }
+
+        @Override
+        public boolean supportsSubdivision() {
+            return scalar.supportsSubdivision();
+        }
+
+        @Override
+        public boolean supportsPerturbation() {
+            return scalar.supportsPerturbation();
+        }
+
+        @Override
+        public String cacheKey() {
+            return scalar.cacheKey();
+        }
+
+        @Override
+        public FractalKernel withMaxIter(int maxIter) {
+            FractalKernel kernel = scalar.withMaxIter(maxIter);
+            return kernel != null ? of(kernel) : null;
+        }
+
+        @Override
+        public ReferenceOrbit referenceOrbit(BigDecimal c_r, BigDecimal c_i, MathContext mc) {
+            return scalar.referenceOrbit(c_r, c_i, mc);
+        }
+    }
+
+    public static class Mandelbrot extends Wrapper {
+        private final MandelbrotKernel scalar;
+
+        Mandelbrot(MandelbrotKernel scalar) {
+            super(scalar);
+            this.scalar = scalar;
+        }
+
+        @Override
+        public void iterateRow(double[] xs, double y, int[] out, int offset, int count) {
+            int maxIter = scalar.maxIter;
+            DoubleVector c_i = DoubleVector.broadcast(SPECIES, y);
+
+            int i = 0;
+            for (int bound = SPECIES.loopBound(count); i < bound; i += SPECIES.length()) {
+                DoubleVector c_r = DoubleVector.fromArray(SPECIES, xs, i);
+                VectorMask<Double> inside = SPECIES.maskAll(false);
+
+                if (scalar.isInteriorAcceleration()) {
+                    // Same cardioid and bulb tests as the scalar kernel
+                    DoubleVector x = c_r.sub(0.25);
+                    DoubleVector y2 = c_i.mul(c_i);
+                    DoubleVector q = x.mul(x).add(y2);
+                    VectorMask<Double> cardioid = q.mul(q.add(x)).compare(VectorOperators.LE, y2.mul(0.25));
+                    DoubleVector x1 = c_r.add(1.0);
+                    VectorMask<Double> bulb = x1.mul(x1).add(y2).compare(VectorOperators.LE, 0.0625)
+                            .andNot(cardioid);
+                    inside = cardioid.or(bulb);
+
+                    if (inside.anyTrue()) {
+                        scalar.cardioidHits.add(cardioid.trueCount());
+                        scalar.bulbHits.add(bulb.trueCount());
+                    }
+                }
+
+                if (inside.allTrue()) {
+                    for (int lane = 0; lane < SPECIES.length(); lane++) {
+                        out[offset + i + lane] = maxIter;
+                    }
+                    continue;
+                }
+
+                escape(ZERO, ZERO, c_r, c_i, inside.not(), 2, maxIter, out, offset + i);
+                for (int lane = 0; lane < SPECIES.length(); lane++) {
+                    if (inside.laneIsSet(lane)) {
+                        out[offset + i + lane] = maxIter;
+                    }
+                }
+            }
+
+            for (; i < count; i++) {
+                out[offset + i] = scalar.iterate(xs[i], y);
+            }
+        }
+
+        @Override
+        public void iterateRow(float[] xs, float y, int[] out, int offset, int count) {
+            int maxIter = scalar.maxIter;
+            FloatVector c_i = FloatVector.broadcast(FLOAT_SPECIES, y);
+            boolean[] inside = new boolean[FLOAT_SPECIES.length()];
+
+            int i = 0;
+            for (int bound = FLOAT_SPECIES.loopBound(count); i < bound; i += FLOAT_SPECIES.length()) {
+                // The scalar float kernel tests in double, so do the same per lane
+                boolean allInside = true;
+                for (int lane = 0; lane < inside.length; lane++) {
+                    inside[lane] = scalar.isInteriorAcceleration() && scalar.knownInterior(xs[i + lane], y);
+                    allInside &= inside[lane];
+                }
+                if (allInside) {
+                    for (int lane = 0; lane < inside.length; lane++) {
+                        out[offset + i + lane] = maxIter;
+                    }
+                    continue;
+                }
+
+                VectorMask<Float> interior = VectorMask.fromArray(FLOAT_SPECIES, inside, 0);
+                escapeFloat(FLOAT_ZERO, FLOAT_ZERO, FloatVector.fromArray(FLOAT_SPECIES, xs, i), c_i,
+                        interior.not(), 2, maxIter, out, offset + i);
+                for (int lane = 0; lane < inside.length; lane++) {
+                    if (inside[lane]) {
+                        out[offset + i + lane] = maxIter;
+                    }
+                }
+            }
+
+            for (; i < count; i++) {
+                out[offset + i] = scalar.iterate(xs[i], y);
+            }
+        }
+    }
+
+    public static class Julia extends Wrapper {
+        private final JuliaKernel scalar;
+
+        Julia(JuliaKernel scalar) {
+            super(scalar);
+            this.scalar = scalar;
+        }
+
+        @Override
+        public void iterateRow(double[] xs, double y, int[] out, int offset, int count) {
+            DoubleVector z_i = DoubleVector.broadcast(SPECIES, y);
+            DoubleVector c_r = DoubleVector.broadcast(SPECIES, scalar.c_r);
+            DoubleVector c_i = DoubleVector.broadcast(SPECIES, scalar.c_i);
+
+            int i = 0;
+            for (int bound = SPECIES.loopBound(count); i < bound; i += SPECIES.length()) {
+                DoubleVector z_r = DoubleVector.fromArray(SPECIES, xs, i);
+                escape(z_r, z_i, c_r, c_i, SPECIES.maskAll(true), 2, scalar.maxIter, out, offset + i);
+            }
+
+            for (; i < count; i++) {
+                out[offset + i] = scalar.iterate(xs[i], y);
+            }
+        }
+
+        @Override
+        public void iterateRow(float[] xs, float y, int[] out, int offset, int count) {
+            FloatVector z_i = FloatVector.broadcast(FLOAT_SPECIES, y);
+            FloatVector c_r = FloatVector.broadcast(FLOAT_SPECIES, (float) scalar.c_r);
+            FloatVector c_i = FloatVector.broadcast(FLOAT_SPECIES, (float) scalar.c_i);
+
+            int i = 0;
+            for (int bound = FLOAT_SPECIES.loopBound(count); i < bound; i += FLOAT_SPECIES.length()) {
+                FloatVector z_r = FloatVector.fromArray(FLOAT_SPECIES, xs, i);
+                escapeFloat(z_r, z_i, c_r, c_i, FLOAT_SPECIES.maskAll(true), 2, scalar.maxIter, out, offset + i);
+            }
+
+            for (; i < count; i++) {
+                out[offset + i] = scalar.iterate(xs[i], y);
+            }
+        }
+    }
+
+    public static class Multibrot extends Wrapper {
+        private final MultibrotKernel scalar;
+        private final int degree;
+
+        Multibrot(MultibrotKernel scalar) {
+            super(scalar);
+            this.scalar = scalar;
+            this.degree = (int) scalar.degree;
+        }
+
+        @Override
+        public void iterateRow(double[] xs, double y, int[] out, int offset, int count) {
+            DoubleVector c_i = DoubleVector.broadcast(SPECIES, y);
+
+            int i = 0;
+            for (int bound = SPECIES.loopBound(count); i < bound; i += SPECIES.length()) {
+                DoubleVector c_r = DoubleVector.fromArray(SPECIES, xs, i);
+                escape(ZERO, ZERO, c_r, c_i, SPECIES.maskAll(true), degree, scalar.maxIter, out, offset + i);
+            }
+
+            for (; i < count; i++) {
+                out[offset + i] = scalar.iterate(xs[i], y);
+            }
+        }
+
+        @Override
+        public void iterateRow(float[] xs, float y, int[] out, int offset, int count) {
+            FloatVector c_i = FloatVector.broadcast(FLOAT_SPECIES, y);
+
+            int i = 0;
+            for (int bound = FLOAT_SPECIES.loopBound(count); i < bound; i += FLOAT_SPECIES.length()) {
+                FloatVector c_r = FloatVector.fromArray(FLOAT_SPECIES, xs, i);
+                escapeFloat(FLOAT_ZERO, FLOAT_ZERO, c_r, c_i, FLOAT_SPECIES.maskAll(true), degree, scalar.maxIter,
+                        out, offset + i);
+            }
+
+            for (; i < count; i++) {
+                out[offset + i] = scalar.iterate(xs[i], y);
+            }
+        }
+    }
+}
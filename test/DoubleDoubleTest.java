@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import fractal.spi.DoubleDouble;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * DoubleDouble arithmetic against BigDecimal on random operands, and the
+ * Mandelbrot kernel in double-double against BigDecimal at a spacing no
+ * double can resolve.
+ */
+class DoubleDoubleTest {
+
+    static final MathContext EXACT = new MathContext(60);
+
+    // Relative error allowed, a few units in the last place of ~106 bits
+    static final double EPSILON = 1e-30;
+
+    static final int SAMPLES = 10_000;
+
+    // hi + lo, with hi anywhere from 1e-10 to 1e10 and either sign
+    static DoubleDouble random(Random random) {
+        double hi = (random.nextBoolean() ? 1 : -1) * Math.pow(10, 20 * random.nextDouble() - 10);
+        double lo = (random.nextDouble() - 0.5) * Math.ulp(hi);
+        return DoubleDouble.valueOf(hi).add(lo);
+    }
+
+    static BigDecimal exact(DoubleDouble d) {
+        return new BigDecimal(d.hi).add(new BigDecimal(d.lo));
+    }
+
+    static void assertClose(BigDecimal expected, DoubleDouble actual, BigDecimal scale, String what) {
+        BigDecimal error = expected.subtract(exact(actual)).abs();
+        assertTrue(error.compareTo(scale.abs().multiply(BigDecimal.valueOf(EPSILON))) <= 0,
+                what + ": " + actual + " instead of " + expected.round(EXACT));
+    }
+
+    @Test
+    void staysNormalized() {
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            DoubleDouble d = random(random).multiply(random(random));
+            assertEquals(d.hi, d.hi + d.lo);
+        }
+    }
+
+    @Test
+    void addsAndSubtracts() {
+        Random random = new Random(2);
+        for (int i = 0; i < SAMPLES; i++) {
+            DoubleDouble a = random(random);
+            DoubleDouble b = random(random);
+            // Relative to the operands: a sum that cancels keeps their absolute error
+            BigDecimal scale = exact(a).abs().add(exact(b).abs());
+            assertClose(exact(a).add(exact(b)), a.add(b), scale, a + " + " + b);
+            assertClose(exact(a).subtract(exact(b)), a.subtract(b), scale, a + " - " + b);
+            assertClose(exact(a).add(new BigDecimal(b.hi)), a.add(b.hi), scale, a + " + " + b.hi);
+        }
+    }
+
+    @Test
+    void cancelsExactly() {
+        Random random = new Random(3);
+        for (int i = 0; i < SAMPLES; i++) {
+            DoubleDouble a = random(random);
+            assertEquals(0.0, a.subtract(a).doubleValue());
+
+            // Sums that cancel all of hi and part of lo
+            DoubleDouble b = a.negate().add(DoubleDouble.valueOf(a.lo * random.nextDouble()));
+            BigDecimal scale = exact(a).abs().add(exact(b).abs());
+            assertClose(exact(a).add(exact(b)), a.add(b), scale, a + " + " + b);
+        }
+    }
+
+    @Test
+    void multiplies() {
+        Random random = new Random(4);
+        for (int i = 0; i < SAMPLES; i++) {
+            DoubleDouble a = random(random);
+            DoubleDouble b = random(random);
+            BigDecimal product = exact(a).multiply(exact(b));
+            assertClose(product, a.multiply(b), product, a + " * " + b);
+            assertClose(exact(a).multiply(new BigDecimal(b.hi)), a.multiply(b.hi), product, a + " * " + b.hi);
+            assertClose(exact(a).multiply(exact(a)), a.square(), exact(a).multiply(exact(a)), a + "^2");
+            assertEquals(0, new BigDecimal(a.hi).multiply(new BigDecimal(b.hi))
+                    .compareTo(exact(DoubleDouble.product(a.hi, b.hi))), a.hi + " * " + b.hi);
+        }
+    }
+
+    @Test
+    void convertsBigDecimal() {
+        Random random = new Random(5);
+        for (int i = 0; i < SAMPLES; i++) {
+            BigDecimal value = new BigDecimal(random.nextDouble() - 0.5)
+                    .multiply(new BigDecimal(random.nextDouble()), EXACT).add(BigDecimal.ONE.movePointLeft(i % 20));
+            assertClose(value, DoubleDouble.valueOf(value), value, value.toString());
+        }
+    }
+
+    // Next to the Misiurewicz point i at a spacing of 1e-24, where double
+    // gets every count wrong
+    @Test
+    void iteratesLikeBigDecimal() {
+        int maxIter = 1000;
+        double spacing = 1e-24;
+        BigDecimal centerR = new BigDecimal("1.3e-27");
+        BigDecimal centerI = new BigDecimal("1.0000000000000000000000000007");
+        MandelbrotKernel kernel = new MandelbrotKernel(maxIter);
+
+        int wrongInDouble = 0;
+        for (int y = -8; y < 8; y++) {
+            for (int x = -8; x < 8; x++) {
+                BigDecimal c_r = centerR.add(new BigDecimal(x * spacing), EXACT);
+                BigDecimal c_i = centerI.add(new BigDecimal(y * spacing), EXACT);
+                int expected = kernel.iterate(c_r, c_i, EXACT);
+                assertEquals(expected, kernel.iterate(DoubleDouble.valueOf(c_r), DoubleDouble.valueOf(c_i)),
+                        c_r + " + " + c_i + "i");
+                if (kernel.iterate(c_r.doubleValue(), c_i.doubleValue()) != expected) {
+                    wrongInDouble++;
+                }
+            }
+        }
+        assertTrue(wrongInDouble > 0);
+    }
+}
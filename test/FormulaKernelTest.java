@@ -0,0 +1,68 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import fractal.spi.FractalKernel;
+
+import org.junit.jupiter.api.Test;
+
+// Emitted formula kernels against the hand-written ones and each other
+class FormulaKernelTest {
+
+    static final int MAX_ITER = 300;
+
+    static void assertSameCounts(FractalKernel expected, FractalKernel actual) {
+        for (int y = 0; y < 120; y++) {
+            for (int x = 0; x < 120; x++) {
+                double c_r = -2.2 + x * 0.0331;
+                double c_i = -1.9 + y * 0.0317;
+                assertEquals(expected.iterate(c_r, c_i), actual.iterate(c_r, c_i), c_r + " + " + c_i + "i");
+            }
+        }
+    }
+
+    @Test
+    void matchesFoldKernels() {
+        assertSameCounts(new BurningShip().create(MAX_ITER), FormulaKernel.create("(|re z| + i|im z|)^2 + c",
+                MAX_ITER));
+        assertSameCounts(new Tricorn().create(MAX_ITER), FormulaKernel.create("conj(z)^2 + c", MAX_ITER));
+    }
+
+    @Test
+    void keepsTheFormulaAtOtherLimits() {
+        FractalKernel kernel = FormulaKernel.create("z^3 - z + c", MAX_ITER).withMaxIter(50);
+        assertSameCounts(FormulaKernel.create("z^3 - z + c", 50), kernel);
+    }
+
+    // Hundreds of steps, so that locals past the first 256 slots are used
+    @Test
+    void compilesLongFormulas() {
+        StringBuilder formula = new StringBuilder("z^2 + c");
+        for (int i = 0; i < 100; i++) {
+            formula.append(" + (z - z)");
+        }
+        assertSameCounts(FormulaKernel.create("z^2 + c", MAX_ITER), FormulaKernel.create(formula.toString(),
+                MAX_ITER));
+    }
+
+    @Test
+    void rejectsBadFormulas() {
+        assertThrows(IllegalArgumentException.class, () -> FormulaKernel.create("z^2 + d", MAX_ITER));
+        assertThrows(IllegalArgumentException.class, () -> FormulaKernel.create("z^z + c", MAX_ITER));
+        assertThrows(IllegalArgumentException.class, () -> FormulaKernel.create("z^2 + 1/0 + c", MAX_ITER));
+        StringBuilder huge = new StringBuilder("c");
+        for (int i = 0; i < 3000; i++) {
+            huge.append(" + sin(z)");
+        }
+        assertThrows(IllegalArgumentException.class, () -> FormulaKernel.create(huge.toString(), MAX_ITER));
+    }
+
+    // More formulas than are kept compiled
+    @Test
+    void recompilesEvictedFormulas() {
+        FractalKernel first = FormulaKernel.create("z^2 + 0.5c", MAX_ITER);
+        for (int i = 0; i <= FormulaKernel.MAX_COMPILED; i++) {
+            FormulaKernel.create("z^2 + " + i + "c", 10);
+        }
+        assertSameCounts(first, FormulaKernel.create("z^2 + 0.5c", MAX_ITER));
+    }
+}
@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import fractal.spi.Precision;
+import fractal.spi.ReferenceOrbit;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Perturbation, with and without the series, against the BigDecimal kernel
+ * at a spacing of 1e-26, far past double and double-double. The frame is
+ * centred on the Misiurewicz point i, where counts from a few dozen up to
+ * the limit are a few pixels apart.
+ *
+ * The expected counts are iterated with more digits than
+ * Precision.mathContext() picks for the spacing: next to a repelling cycle
+ * like that of i, 34 digits already get the odd pixel wrong.
+ */
+class ReferenceOrbitTest {
+
+    static final int MAX_ITER = 1000;
+    static final int SIZE = 16;
+    static final double SPACING = 1e-26;
+    static final MathContext EXACT = new MathContext(60);
+
+    static final BigDecimal CENTER_R = BigDecimal.ZERO;
+    static final BigDecimal CENTER_I = BigDecimal.ONE;
+
+    // Count of pixel (x, y) from the BigDecimal kernel
+    static int[] expected() {
+        MandelbrotKernel kernel = new MandelbrotKernel(MAX_ITER);
+        int[] counts = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                counts[y * SIZE + x] = kernel.iterate(CENTER_R.add(offset(x), EXACT),
+                        CENTER_I.add(offset(y), EXACT), EXACT);
+            }
+        }
+        return counts;
+    }
+
+    static BigDecimal offset(int pixel) {
+        return new BigDecimal((pixel - SIZE / 2) * SPACING);
+    }
+
+    // Reference through pixel (rx, ry), at the precision FractalRenderer uses
+    static ReferenceOrbit orbit(int rx, int ry) {
+        MathContext mc = Precision.mathContext(SPACING);
+        return new ReferenceOrbit(CENTER_R.add(offset(rx), mc), CENTER_I.add(offset(ry), mc), MAX_ITER, mc);
+    }
+
+    // Counts of every pixel against the reference through pixel (rx, ry),
+    // with the series if series is set
+    static int[] perturbed(int rx, int ry, boolean series) {
+        ReferenceOrbit orbit = orbit(rx, ry);
+        if (series) {
+            assertTrue(orbit.approximate(Math.hypot(SIZE, SIZE) * SPACING) > 0, "the series skips nothing");
+        }
+        int[] counts = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                counts[y * SIZE + x] = orbit.iterate((x - rx) * SPACING, (y - ry) * SPACING);
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    void frameHasEscapingAndInsidePixels() {
+        int[] expected = expected();
+        int min = MAX_ITER;
+        for (int count : expected) {
+            min = Math.min(min, count);
+        }
+        assertTrue(min < MAX_ITER / 10, "min " + min);
+        assertEquals(MAX_ITER, expected[SIZE / 2 * SIZE + SIZE / 2]);
+    }
+
+    // Reference at the centre pixel, as FractalRenderer picks it
+    @Test
+    void matchesBigDecimal() {
+        int[] expected = expected();
+        assertArraysEqual(expected, perturbed(SIZE / 2, SIZE / 2, false));
+        assertArraysEqual(expected, perturbed(SIZE / 2, SIZE / 2, true));
+    }
+
+    /*
+     * A reference off i escapes after a few dozen iterations, so the pixels
+     * that outlive it are rebased onto Z_0. The centre pixel, i itself, is
+     * left out: its orbit lands exactly on a repelling cycle, where only
+     * exact arithmetic stays, and perturbed in double it escapes after all.
+     */
+    @Test
+    void matchesBigDecimalWhenRebased() {
+        assertTrue(orbit(3, 5).length() < MAX_ITER / 10);
+        int[] expected = expected();
+        for (boolean series : new boolean[] { false, true }) {
+            int[] actual = perturbed(3, 5, series);
+            actual[SIZE / 2 * SIZE + SIZE / 2] = expected[SIZE / 2 * SIZE + SIZE / 2];
+            assertArraysEqual(expected, actual);
+        }
+    }
+
+    static void assertArraysEqual(int[] expected, int[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], "pixel " + i % SIZE + ", " + i / SIZE);
+        }
+    }
+}
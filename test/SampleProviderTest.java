@@ -0,0 +1,57 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * sample-provider.jar, which the build puts on the test class path, found by
+ * ServiceLoader and rendered like a built-in fractal.
+ */
+class SampleProviderTest {
+
+    static final int SIZE = 200;
+    static final int MAX_ITER = 300;
+
+    @Test
+    void isFoundAfterTheBuiltInFractals() {
+        List<FractalKernelProvider> all = Fractals.all();
+        List<FractalKernelProvider> builtIn = Fractals.builtIn();
+        assertEquals(builtIn.size() + 1, all.size());
+        for (int i = 0; i < builtIn.size(); i++) {
+            assertEquals(builtIn.get(i).name(), all.get(i).name());
+        }
+
+        FractalKernelProvider celtic = Fractals.named("Celtic");
+        assertEquals("example.Celtic", celtic.getClass().getName());
+        assertTrue(celtic.getClass().getProtectionDomain().getCodeSource().getLocation().getPath()
+                .endsWith("/sample-provider.jar"));
+    }
+
+    @Test
+    void rendersItsKernel() {
+        FractalKernelProvider celtic = Fractals.named("celtic");
+        FractalKernel kernel = celtic.create(MAX_ITER);
+        FractalRenderer engine = new FractalRenderer(kernel, celtic.palette(kernel, null, MAX_ITER));
+        engine.setMarianiSilver(true);
+        Viewport view = new Viewport(-2.2, 1.6, 60);
+        FrameBuffer frame = new FrameBuffer(SIZE, SIZE);
+        engine.render(view, frame);
+
+        int inside = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int expected = kernel.iterate(view.getXPos(x), view.getYPos(y));
+                assertEquals(expected, frame.iterations[y * SIZE + x], "pixel " + x + ", " + y);
+                if (expected == MAX_ITER) {
+                    inside++;
+                }
+            }
+        }
+        assertTrue(inside > 0 && inside < SIZE * SIZE, "inside " + inside);
+    }
+}
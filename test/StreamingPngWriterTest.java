@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import fractal.spi.Palette;
+
+import org.junit.jupiter.api.Test;
+
+// PNGs written band by band, read back with ImageIO
+class StreamingPngWriterTest {
+
+    static BufferedImage decode(byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertTrue(image != null, "not a PNG ImageIO can read");
+        return image;
+    }
+
+    // Compares the color of each pixel, PNG has no alpha channel
+    static void assertPixels(int[] expected, int width, int height, BufferedImage image) {
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(expected[y * width + x] & 0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF,
+                        "pixel " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    void decodesToThePixelsWritten() throws IOException {
+        int width = 300;
+        int height = 97;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            // Noise as well as gradients, so that the Sub filter wraps around
+            pixels[i] = ((i * 0x9E3779B1) >>> 8 ^ (i % width) << 16) & 0xFFFFFF;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (StreamingPngWriter png = new StreamingPngWriter(bytes, width, height)) {
+            int band = 10;
+            for (int y = 0; y < height; y += band) {
+                int rows = Math.min(band, height - y);
+                int[] rowsOf = new int[rows * width];
+                System.arraycopy(pixels, y * width, rowsOf, 0, rowsOf.length);
+                png.writeRows(rowsOf, rows);
+            }
+        }
+        assertPixels(pixels, width, height, decode(bytes.toByteArray()));
+    }
+
+    // More than one IDAT chunk
+    @Test
+    void decodesALargeImage() throws IOException {
+        int width = 1000;
+        int height = 400;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i * 0x2545F491 >>> 8;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (StreamingPngWriter png = new StreamingPngWriter(bytes, width, height)) {
+            png.writeRows(pixels, height);
+        }
+        assertTrue(bytes.size() > 2 * StreamingPngWriter.CHUNK_SIZE);
+        assertPixels(pixels, width, height, decode(bytes.toByteArray()));
+    }
+
+    @Test
+    void closesTheStreamOfAnIncompleteImage() throws IOException {
+        boolean[] closed = { false };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        StreamingPngWriter png = new StreamingPngWriter(bytes, 10, 10);
+        png.writeRows(new int[10 * 4], 4);
+        assertThrows(IllegalStateException.class, png::close);
+        assertTrue(closed[0]);
+    }
+
+    // A last strip shorter than the others, as FractalRenderer.renderStrips() hands it out
+    @Test
+    void streamsTheSameImageAsAFullRender() throws IOException {
+        int width = 200;
+        int height = 150;
+        int maxIter = 200;
+        Viewport view = new Viewport(-2.5, 1.5, 66);
+        FractalRenderer engine = new FractalRenderer(new MandelbrotKernel(maxIter),
+                Palette.of(Palette.Scheme.COSINE, maxIter));
+
+        FrameBuffer frame = new FrameBuffer(width, height);
+        engine.render(view, frame);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (StreamingPngWriter png = new StreamingPngWriter(bytes, width, height)) {
+            engine.renderStrips(view, width, height, 64, (strip, rows) -> {
+                assertEquals(rows, strip.height);
+                png.writeRows(strip.pixels, rows);
+            });
+        }
+        assertPixels(frame.pixels, width, height, decode(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fractal.spi.FractalKernel;
+import fractal.spi.FractalKernelProvider;
+import fractal.spi.Palette;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Mariani-Silver renders against the same frames shaded pixel by pixel, for
+ * every built-in kernel and a formula, at the default view and at one where
+ * the set has filaments all over.
+ */
+class TileRendererTest {
+
+    static final int SIZE = 600;
+    static final int MAX_ITER = 500;
+
+    static final Viewport DEFAULT_VIEW = new Viewport(FractalExplorer.DEFAULT_TOP_LEFT_X,
+            FractalExplorer.DEFAULT_TOP_LEFT_Y, FractalExplorer.DEFAULT_ZOOM);
+    static final Viewport FILAMENTS = new Viewport(-1.9, 1.2, 300);
+
+    // Pixels a fill may get wrong at FILAMENTS, see TileRenderer.setMarianiSilver()
+    static final int MAX_MISSED = 5;
+
+    static List<FractalKernel> kernels() {
+        List<FractalKernel> kernels = new ArrayList<>();
+        for (FractalKernelProvider provider : Fractals.builtIn()) {
+            kernels.add(provider.create(MAX_ITER));
+        }
+        kernels.add(FormulaKernel.create("z^3 - z + c", MAX_ITER));
+        return kernels;
+    }
+
+    static FrameBuffer render(FractalKernel kernel, Viewport view, boolean marianiSilver, boolean progressive) {
+        // Newton counts index a palette of its own, the rest fit any
+        Palette palette = kernel instanceof NewtonKernel
+                ? Palette.forRoots(((NewtonKernel) kernel).rootCount(), MAX_ITER)
+                : Palette.of(Palette.Scheme.COSINE, MAX_ITER);
+        FractalRenderer engine = new FractalRenderer(kernel, palette);
+        engine.setMarianiSilver(marianiSilver);
+        engine.setProgressive(progressive);
+        FrameBuffer frame = new FrameBuffer(SIZE, SIZE);
+        engine.render(view, frame);
+        return frame;
+    }
+
+    @Test
+    void matchesBruteForceAtDefaultView() {
+        for (FractalKernel kernel : kernels()) {
+            int[] expected = render(kernel, DEFAULT_VIEW, false, false).iterations;
+            assertArrayEquals(expected, render(kernel, DEFAULT_VIEW, true, false).iterations, kernel.cacheKey());
+            assertArrayEquals(expected, render(kernel, DEFAULT_VIEW, true, true).iterations, kernel.cacheKey());
+        }
+    }
+
+    @Test
+    void kernelsWithHolesAreShadedInFull() {
+        for (FractalKernel kernel : kernels()) {
+            if (!kernel.supportsSubdivision()) {
+                assertArrayEquals(render(kernel, FILAMENTS, false, false).iterations,
+                        render(kernel, FILAMENTS, true, false).iterations, kernel.cacheKey());
+            }
+        }
+    }
+
+    // Only inside counts are ever filled in, and the grid inside each fill
+    // leaves few filaments to slip through
+    @Test
+    void fillsMissFewFilaments() {
+        for (FractalKernel kernel : kernels()) {
+            if (!kernel.supportsSubdivision()) {
+                continue;
+            }
+            int[] expected = render(kernel, FILAMENTS, false, false).iterations;
+            for (boolean progressive : new boolean[] { false, true }) {
+                int[] actual = render(kernel, FILAMENTS, true, progressive).iterations;
+                int missed = 0;
+                for (int i = 0; i < expected.length; i++) {
+                    if (actual[i] != expected[i]) {
+                        assertEquals(MAX_ITER, actual[i], kernel.cacheKey() + " pixel " + i);
+                        missed++;
+                    }
+                }
+                assertTrue(missed <= MAX_MISSED, kernel.cacheKey() + " missed " + missed);
+            }
+        }
+    }
+
+    @Test
+    void onlyPolynomialKernelsSupportSubdivision() {
+        assertTrue(new MandelbrotKernel(MAX_ITER).supportsSubdivision());
+        assertTrue(new JuliaKernel(-0.8, 0.156, MAX_ITER).supportsSubdivision());
+        assertTrue(new MultibrotKernel(3, MAX_ITER).supportsSubdivision());
+        assertFalse(new MultibrotKernel(2.5, MAX_ITER).supportsSubdivision());
+        assertFalse(new BurningShip().create(MAX_ITER).supportsSubdivision());
+        assertFalse(new Tricorn().create(MAX_ITER).supportsSubdivision());
+        assertFalse(new Newton().create(MAX_ITER).supportsSubdivision());
+        assertFalse(FormulaKernel.create("z^2 + c", MAX_ITER).supportsSubdivision());
+    }
+}